@@ -1,30 +1,49 @@
 package lu.crx.financing;
 
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.FlushingJpaTransactionManager;
 import lu.crx.financing.services.FinancingService;
 import lu.crx.financing.services.SeedingService;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class AssignmentFinancingApplication {
 
     public static void main(String[] args) {
         SpringApplication.run(AssignmentFinancingApplication.class, args);
     }
 
+    @Bean
+    public PlatformTransactionManager transactionManager(ObjectProvider<TransactionManagerCustomizers> transactionManagerCustomizers) {
+        // replaces the transaction manager of the JPA auto-configuration, the settings changes must be flushed before commit
+        FlushingJpaTransactionManager transactionManager = new FlushingJpaTransactionManager();
+        transactionManagerCustomizers.ifAvailable(customizers -> customizers.customize(transactionManager));
+        return transactionManager;
+    }
+
     @Bean
     public CommandLineRunner run(
             SeedingService seedingService,
-            FinancingService financingService) {
+            FinancingService financingService,
+            FinancingProperties financingProperties) {
 
         return args -> {
-            // seeding master data - creditors, debtors and purchasers
-            seedingService.seedMasterData();
-
-            // seeding the invoices
-            seedingService.seedInvoices();
+            // the seeding is skipped in batch mode, the database already holds the data
+            if (financingProperties.getSeeding().isEnabled()) {
+                // seeding master data - creditors, debtors and purchasers
+                seedingService.seedMasterData();
+
+                // seeding the invoices
+                seedingService.seedInvoices();
+            }
 
             // running the financing
             financingService.finance();
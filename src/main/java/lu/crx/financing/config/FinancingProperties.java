@@ -0,0 +1,230 @@
+package lu.crx.financing.config;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Financing properties contain the configurable settings of the financing application, bound from the
+ * {@code financing.*} properties. The combinations the financing cannot honour are refused at startup.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "financing")
+public class FinancingProperties implements InitializingBean {
+
+    private final Seeding seeding = new Seeding();
+
+    private final BatchSizing batchSizing = new BatchSizing();
+
+    private final Allocation allocation = new Allocation();
+
+    private final Pipeline pipeline = new Pipeline();
+
+    private final Scheduling scheduling = new Scheduling();
+
+    private final Journal journal = new Journal();
+
+    private final OfferBook offerBook = new OfferBook();
+
+    private final Reevaluation reevaluation = new Reevaluation();
+
+    private final PreClassification preClassification = new PreClassification();
+
+    private final Ingestion ingestion = new Ingestion();
+
+    @Override
+    public void afterPropertiesSet() {
+        if (allocation.isCapacityConstrained() && pipeline.isEnabled()) {
+            throw new IllegalStateException("financing.allocation.capacity-constrained requires a sequential run, "
+                    + "disable financing.pipeline.enabled");
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Seeding {
+
+        /**
+         * Whether the master data and the invoices are seeded before the financing runs.
+         */
+        private boolean enabled = true;
+    }
+
+    @Getter
+    @Setter
+    public static class BatchSizing {
+
+        /**
+         * Whether the batch size of the sequential financing is tuned during the run, or stays at the initial size.
+         */
+        private boolean adaptive = true;
+
+        /**
+         * The number of invoices of the first batch.
+         */
+        private int initialSize = 100;
+
+        /**
+         * The smallest batch size.
+         */
+        private int minSize = 10;
+
+        /**
+         * The largest batch size.
+         */
+        private int maxSize = 5000;
+
+        /**
+         * The number of full batches measured before the batch size is adjusted.
+         */
+        private int windowBatches = 3;
+
+        /**
+         * The share of the maximum heap in use after a garbage collection above which the batch size is halved.
+         */
+        private double heapThreshold = 0.75;
+    }
+
+    @Getter
+    @Setter
+    public static class Allocation {
+
+        /**
+         * Whether the invoices are allocated within the daily funding limits of the purchasers, instead of always to
+         * the cheapest purchaser. The invoices are allocated in the order of the sequential run, so the allocation is
+         * deterministic; it cannot be combined with the pipeline, whose deciders would race for the last funding of a
+         * purchaser.
+         */
+        private boolean capacityConstrained = false;
+    }
+
+    @Getter
+    @Setter
+    public static class Pipeline {
+
+        /**
+         * Whether the financing runs as a reader, decider and writer pipeline instead of sequentially.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The number of invoices read per batch.
+         */
+        private int batchSize = 500;
+
+        /**
+         * The number of decider workers.
+         */
+        private int deciders = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * The capacity, in batches, of the queues between the stages.
+         */
+        private int queueCapacity = 4;
+    }
+
+    @Getter
+    @Setter
+    public static class Scheduling {
+
+        /**
+         * Whether the PENDING invoices are processed nearest maturity date first, instead of in id order.
+         */
+        private boolean maturityFirst = false;
+
+        /**
+         * The time a financing run may spend, it stops at the first batch boundary past it and defers the invoices
+         * left to the next run. No limit when zero.
+         */
+        private Duration timeBudget = Duration.ZERO;
+    }
+
+    @Getter
+    @Setter
+    public static class Journal {
+
+        /**
+         * Whether the financing decisions are written to the decision journal and applied to the database in background.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The directory holding the journal segments.
+         */
+        private String directory = "journal";
+
+        /**
+         * The number of decisions per journal segment.
+         */
+        private int segmentRecords = 65536;
+
+        /**
+         * The interval between two fsyncs of the active segment, at most this much work is lost on a crash.
+         */
+        private Duration fsyncInterval = Duration.ofMillis(100);
+
+        /**
+         * The interval between two applications of the sealed segments to the database.
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+    }
+
+    @Getter
+    @Setter
+    public static class OfferBook {
+
+        /**
+         * The offer book snapshot file, rebuilt whenever the settings version changes.
+         */
+        private String file = "offer-book.bin";
+    }
+
+    @Getter
+    @Setter
+    public static class Reevaluation {
+
+        /**
+         * Whether the NON_FINANCED invoices of the creditors whose settings changed are decided again.
+         */
+        private boolean enabled = true;
+
+        /**
+         * The number of invoices re-decided per batch.
+         */
+        private int batchSize = 500;
+    }
+
+    @Getter
+    @Setter
+    public static class PreClassification {
+
+        /**
+         * Whether the PENDING invoices no purchaser can finance are settled per creditor with set-based updates before
+         * the invoices are decided one batch after the other.
+         */
+        private boolean enabled = true;
+    }
+
+    @Getter
+    @Setter
+    public static class Ingestion {
+
+        /**
+         * The number of invoices inserted per transaction, bounding the memory used by an ingestion.
+         */
+        private int batchSize = 1000;
+
+        /**
+         * The directory polled for invoice files (*.csv, *.ndjson), the file drop is disabled when empty.
+         */
+        private String dropDirectory = "";
+
+        /**
+         * The interval between two polls of the drop directory.
+         */
+        private Duration pollInterval = Duration.ofSeconds(5);
+    }
+}
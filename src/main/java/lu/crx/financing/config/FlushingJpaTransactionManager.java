@@ -0,0 +1,20 @@
+package lu.crx.financing.config;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+/**
+ * JPA transaction manager flushing the persistence context before the before-commit callbacks. The plain
+ * {@link JpaTransactionManager} flushes when committing, after these callbacks, so the changes reported during that
+ * flush (the settings changes of the entity listeners) would miss the
+ * {@link org.springframework.transaction.event.TransactionPhase#BEFORE_COMMIT} listeners.
+ */
+public class FlushingJpaTransactionManager extends JpaTransactionManager {
+
+    @Override
+    protected void prepareForCommit(DefaultTransactionStatus status) {
+        if (status.isNewTransaction() && !status.isReadOnly()) {
+            status.flush();
+        }
+    }
+}
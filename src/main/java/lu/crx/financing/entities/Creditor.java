@@ -3,6 +3,7 @@ package lu.crx.financing.entities;
 import java.io.Serializable;
 import jakarta.persistence.Basic;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
@@ -18,6 +19,7 @@ import lombok.ToString;
  * and is waiting for this invoice to be paid by the debtor.
  */
 @Entity
+@EntityListeners(SettingsChangeListener.class)
 @Getter
 @Setter
 @ToString
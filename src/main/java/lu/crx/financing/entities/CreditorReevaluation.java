@@ -0,0 +1,41 @@
+package lu.crx.financing.entities;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import jakarta.persistence.Basic;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * A creditor reevaluation queues a {@link Creditor} whose financing settings changed, its NON_FINANCED invoices are
+ * decided again by the next financing run. A creditor is queued at most once.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CreditorReevaluation implements Serializable {
+
+    @Id
+    private long creditorId;
+
+    /**
+     * The settings version of the last change queuing the creditor, the creditor is reevaluated by the first run
+     * reading this version or a later one.
+     */
+    @Basic(optional = false)
+    private long settingsVersion;
+
+    @Basic(optional = false)
+    private LocalDateTime queuedAt;
+
+}
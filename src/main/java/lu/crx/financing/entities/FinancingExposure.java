@@ -0,0 +1,77 @@
+package lu.crx.financing.entities;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import jakarta.persistence.Basic;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * A financing exposure entity aggregates the {@link FinancingResult}s per purchaser, creditor, maturity month and
+ * financing date. It is maintained incrementally by the financing engine in the same transaction as the results,
+ * so that exposure queries scale with the number of groups instead of the number of results.
+ */
+@Entity
+@IdClass(FinancingExposure.Key.class)
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FinancingExposure implements Serializable {
+
+    @Id
+    private long purchaserId;
+
+    @Id
+    private long creditorId;
+
+    /**
+     * The first day of the maturity month of the financed invoices.
+     */
+    @Id
+    private LocalDate maturityMonth;
+
+    @Id
+    private LocalDate financingDate;
+
+    @Basic(optional = false)
+    private long financedInvoices;
+
+    /**
+     * The total value of the financed invoices.
+     */
+    @Basic(optional = false)
+    private long financedValueInCents;
+
+    /**
+     * The total early payment amount paid by the purchaser, outstanding until the maturity date.
+     */
+    @Basic(optional = false)
+    private long earlyPaymentAmountInCents;
+
+    @Getter
+    @Setter
+    @EqualsAndHashCode
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        private long purchaserId;
+
+        private long creditorId;
+
+        private LocalDate maturityMonth;
+
+        private LocalDate financingDate;
+    }
+}
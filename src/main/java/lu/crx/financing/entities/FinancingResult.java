@@ -48,4 +48,10 @@ public class FinancingResult implements Serializable {
     @ManyToOne
     private Purchaser purchaser;
 
+    /**
+     * The version of the settings the financing decision was taken from, see {@link SettingsVersion}.
+     */
+    @Basic(optional = false)
+    private long settingsVersion;
+
 }
@@ -0,0 +1,103 @@
+package lu.crx.financing.entities;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import jakarta.persistence.Basic;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * A financing run entity records a single run of the financing engine: when it ran, what it decided and how fast.
+ * It is written outside the transaction of the run, so that failed runs are recorded as well.
+ */
+@Entity
+@Table(indexes = @Index(name = "financing_run_started_at_idx", columnList = "started_at"))
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FinancingRun implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private long id;
+
+    @Basic(optional = false)
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+
+    /**
+     * The status of the run, see {@link lu.crx.financing.enums.FinancingRunStatus}.
+     */
+    @Basic(optional = false)
+    private String runStatus;
+
+    /**
+     * The number of PENDING invoices when the run started.
+     */
+    @Basic(optional = false)
+    private long pendingInvoices;
+
+    private long financedInvoices;
+
+    private long nonFinancedInvoices;
+
+    private long canceledInvoices;
+
+    private long suspendedInvoices;
+
+    /**
+     * The number of eligible invoices left PENDING because no purchaser had funding left for them.
+     */
+    private long unfundedInvoices;
+
+    /**
+     * The number of invoices skipped because another run processed them.
+     */
+    private long skippedInvoices;
+
+    private long batches;
+
+    /**
+     * The number of PENDING invoices left to the next run because the time budget of the run was spent.
+     */
+    private long deferredInvoices;
+
+    /**
+     * The earliest maturity date of the deferred invoices.
+     */
+    private LocalDate earliestDeferredMaturityDate;
+
+    /**
+     * The batch size in use at the end of the run.
+     */
+    private int batchSize;
+
+    private long elapsedMillis;
+
+    /**
+     * The millis since JVM start when the first invoice was processed, tracked for startup regressions.
+     */
+    private long timeToFirstInvoiceMillis;
+
+    private long invoicesPerSecond;
+
+    @Column(length = 1000)
+    private String error;
+
+}
@@ -5,7 +5,9 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
 import java.io.Serializable;
 import java.time.LocalDate;
 import lombok.AllArgsConstructor;
@@ -19,6 +21,11 @@ import lombok.ToString;
  * An invoice issued by the {@link Creditor} to the {@link Debtor} for shipped goods.
  */
 @Entity
+@Table(indexes = {
+        @Index(name = "invoice_creditor_status_maturity_idx", columnList = "creditor_id, invoice_status, maturity_date, id"),
+        @Index(name = "invoice_status_id_idx", columnList = "invoice_status, id"),
+        @Index(name = "invoice_status_maturity_idx", columnList = "invoice_status, maturity_date, id")
+})
 @Getter
 @Setter
 @ToString
@@ -6,6 +6,7 @@ import java.util.Set;
 import jakarta.persistence.Basic;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
@@ -23,6 +24,7 @@ import lombok.ToString;
  * to the creditor for the term and the value of the invoice, according to the rate set up by this purchaser.
  */
 @Entity
+@EntityListeners(SettingsChangeListener.class)
 @Getter
 @Setter
 @ToString
@@ -44,6 +46,12 @@ public class Purchaser implements Serializable {
     @Basic(optional = false)
     private int minimumFinancingTermInDays;
 
+    /**
+     * The maximum amount (sum of the early payment amounts) the purchaser funds per financing date, no limit when
+     * null. It is only enforced by the capacity-constrained allocation.
+     */
+    private Long dailyFundingLimitInCents;
+
     /**
      * The per-creditor settings for financing.
      */
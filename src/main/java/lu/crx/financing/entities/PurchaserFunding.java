@@ -0,0 +1,56 @@
+package lu.crx.financing.entities;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import jakarta.persistence.Basic;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * A purchaser funding holds the funding reserved for a {@link Purchaser} on a financing date by the
+ * capacity-constrained financing runs. It is only increased by a conditional update against the daily funding limit
+ * of the purchaser, in the transaction writing the financing results, so that overlapping runs of any instance never
+ * fund more than the limit between them.
+ */
+@Entity
+@IdClass(PurchaserFunding.Key.class)
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurchaserFunding implements Serializable {
+
+    @Id
+    private long purchaserId;
+
+    @Id
+    private LocalDate financingDate;
+
+    /**
+     * The sum of the early payment amounts reserved on the financing date.
+     */
+    @Basic(optional = false)
+    private long fundedInCents;
+
+    @Getter
+    @Setter
+    @EqualsAndHashCode
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        private long purchaserId;
+
+        private LocalDate financingDate;
+    }
+}
@@ -0,0 +1,71 @@
+package lu.crx.financing.entities;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PreUpdate;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import lu.crx.financing.services.SettingsVersionService;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * Settings change listener records the settings changes flushed by the transaction modifying the settings, the
+ * {@link SettingsVersion} is bumped before the transaction commits. It runs no statement during the flush. It is
+ * instantiated by Spring, bulk JPQL and SQL updates bypass it and must report the change themselves.
+ */
+public class SettingsChangeListener {
+
+    /**
+     * The properties read by the financing decisions, an update of any other property does not change a decision.
+     */
+    private static final Map<Class<?>, Set<String>> FINANCING_PROPERTIES = Map.of(
+            Creditor.class, Set.of("maxFinancingRateInBps"),
+            Purchaser.class, Set.of("minimumFinancingTermInDays", "purchaserFinancingSettings"),
+            PurchaserFinancingSettings.class, Set.of("creditor", "annualRateInBps"));
+
+    private final SettingsVersionService settingsVersionService;
+    private final ObjectProvider<EntityManager> entityManagerProvider;
+
+    public SettingsChangeListener(SettingsVersionService settingsVersionService, ObjectProvider<EntityManager> entityManagerProvider) {
+        this.settingsVersionService = settingsVersionService;
+        this.entityManagerProvider = entityManagerProvider;
+    }
+
+    @PostPersist
+    @PostRemove
+    public void onSettingsAddedOrRemoved(Object entity) {
+        settingsVersionService.settingsChanged(entity, true);
+    }
+
+    @PreUpdate
+    public void onSettingsUpdate(Object entity) {
+        settingsVersionService.settingsChanged(entity, isFinancingChange(entity));
+    }
+
+    /**
+     * Method that compares the financing properties of the entity with the state loaded by the persistence context,
+     * before the update is written
+     *
+     * @param entity The updated entity
+     * @return Whether a property read by the financing decisions changed
+     */
+    private boolean isFinancingChange(Object entity) {
+        EntityEntry entry = entityManagerProvider.getObject().unwrap(SessionImplementor.class)
+                .getPersistenceContextInternal().getEntry(entity);
+        if (entry == null || entry.getLoadedState() == null) {
+            return true;
+        }
+        for (String property : FINANCING_PROPERTIES.getOrDefault(entity.getClass(), Set.of())) {
+            Object value = entry.getPersister().getPropertyValue(entity, property);
+            if (value instanceof PersistentCollection<?> collection ? collection.isDirty() : !Objects.equals(value, entry.getLoadedValue(property))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
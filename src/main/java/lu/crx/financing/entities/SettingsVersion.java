@@ -0,0 +1,40 @@
+package lu.crx.financing.entities;
+
+import java.io.Serializable;
+import java.util.UUID;
+import jakarta.persistence.Basic;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Settings version is the single-row stamp of the purchaser and creditor settings. The version is bumped whenever a
+ * {@link Purchaser}, a {@link PurchaserFinancingSettings} or a {@link Creditor} is modified, the epoch is drawn when the
+ * row is created so that a version of a recreated database is never mistaken for an older one.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SettingsVersion implements Serializable {
+
+    public static final long ID = 1;
+
+    @Id
+    private long id;
+
+    @Basic(optional = false)
+    private UUID epoch;
+
+    @Basic(optional = false)
+    private long version;
+
+}
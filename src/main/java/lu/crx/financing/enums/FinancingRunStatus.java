@@ -0,0 +1,18 @@
+package lu.crx.financing.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * FinancingRunStatus enumeration contains all the possible statuses of a financing run.
+ */
+@AllArgsConstructor
+@Getter
+public enum FinancingRunStatus {
+    RUNNING("RUNNING"),
+    COMPLETED("COMPLETED"),
+    FAILED("FAILED");
+
+    private final String description;
+
+}
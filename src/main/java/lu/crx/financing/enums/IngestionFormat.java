@@ -0,0 +1,27 @@
+package lu.crx.financing.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * IngestionFormat enumeration contains the supported invoice file formats.
+ */
+@AllArgsConstructor
+@Getter
+public enum IngestionFormat {
+    CSV(".csv", "text/csv"),
+    NDJSON(".ndjson", "application/x-ndjson");
+
+    private final String extension;
+    private final String mediaType;
+
+    public static IngestionFormat fromFileName(String fileName) {
+        for (IngestionFormat format : values()) {
+            if (fileName.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+}
@@ -18,4 +18,13 @@ public enum InvoiceStatus {
     private final int id;
     private final String description;
 
+    public static InvoiceStatus fromId(int id) {
+        for (InvoiceStatus status : values()) {
+            if (status.id == id) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Unknown invoice status id: " + id);
+    }
+
 }
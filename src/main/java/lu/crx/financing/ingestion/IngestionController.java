@@ -0,0 +1,32 @@
+package lu.crx.financing.ingestion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import lombok.AllArgsConstructor;
+import lu.crx.financing.enums.IngestionFormat;
+import lu.crx.financing.model.IngestionReport;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Ingestion controller streams the uploaded invoice files to the {@link IngestionService}, the request body is never
+ * buffered. It is served with the ingest profile only.
+ */
+@RestController
+@RequestMapping("/invoices/ingest")
+@AllArgsConstructor
+public class IngestionController {
+
+    private final IngestionService ingestionService;
+
+    @PostMapping(consumes = "text/csv")
+    public IngestionReport ingestCsv(InputStream body) throws IOException {
+        return ingestionService.ingest(body, IngestionFormat.CSV);
+    }
+
+    @PostMapping(consumes = "application/x-ndjson")
+    public IngestionReport ingestNdjson(InputStream body) throws IOException {
+        return ingestionService.ingest(body, IngestionFormat.NDJSON);
+    }
+}
@@ -0,0 +1,132 @@
+package lu.crx.financing.ingestion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.enums.IngestionFormat;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Ingestion directory watcher polls the drop directory for invoice files and ingests them in name order. An ingested
+ * file is moved to the processed sub-directory, a failed one to the failed sub-directory. Producers must write the
+ * files under another name and rename them once complete.
+ * <p>
+ * A dropped file is ingested in a single transaction, committed only once the file is moved to the processed
+ * sub-directory: a failed file inserts nothing and can be dropped again once fixed, and a file is never ingested twice.
+ * A failure never stops the polling.
+ */
+@Slf4j
+@Component
+public class IngestionDirectoryWatcher implements SmartLifecycle {
+
+    private final FinancingProperties.Ingestion settings;
+    private final IngestionService ingestionService;
+    private final TransactionTemplate transactionTemplate;
+
+    private Path directory;
+    private ScheduledExecutorService poller;
+    private volatile boolean running;
+
+    public IngestionDirectoryWatcher(FinancingProperties financingProperties, IngestionService ingestionService,
+                                     TransactionTemplate transactionTemplate) {
+        this.settings = financingProperties.getIngestion();
+        this.ingestionService = ingestionService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Method that starts polling the drop directory, when one is configured
+     */
+    @Override
+    public void start() {
+        running = true;
+        if (settings.getDropDirectory().isBlank()) {
+            return;
+        }
+        directory = Paths.get(settings.getDropDirectory());
+        try {
+            Files.createDirectories(directory.resolve("processed"));
+            Files.createDirectories(directory.resolve("failed"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create the drop directory: " + directory, e);
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ingestion-directory-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, settings.getPollInterval().toMillis(), settings.getPollInterval().toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Watching drop directory: {}", directory.toAbsolutePath());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (poller != null) {
+            poller.shutdown();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void poll() {
+        List<Path> files;
+        try (Stream<Path> entries = Files.list(directory)) {
+            files = entries.filter(Files::isRegularFile)
+                    .filter(path -> IngestionFormat.fromFileName(path.getFileName().toString()) != null)
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            log.error("Cannot list the drop directory: {}", directory, e);
+            return;
+        }
+        for (Path file : files) {
+            try {
+                ingest(file);
+            } catch (RuntimeException e) {
+                // An exception escaping the task would cancel all the next polls
+                log.error("Ingestion of dropped file: {} failed", file.getFileName(), e);
+            }
+        }
+    }
+
+    private void ingest(Path file) {
+        Path processed = directory.resolve("processed").resolve(file.getFileName());
+        try {
+            log.info("Ingesting dropped file: {}", file.getFileName());
+            transactionTemplate.executeWithoutResult(status -> {
+                try (InputStream input = Files.newInputStream(file)) {
+                    ingestionService.ingest(input, IngestionFormat.fromFileName(file.getFileName().toString()));
+                    Files.move(file, processed, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Ingestion of dropped file: {} failed, nothing was inserted", file.getFileName(), e);
+            // The file may have been moved before the commit failed
+            Path source = Files.exists(file) ? file : processed;
+            try {
+                Files.move(source, directory.resolve("failed").resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException moveFailure) {
+                log.error("Cannot move the dropped file: {} to the failed directory, it is retried by the next poll", file.getFileName(), moveFailure);
+            }
+        }
+    }
+}
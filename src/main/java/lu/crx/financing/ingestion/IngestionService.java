@@ -0,0 +1,219 @@
+package lu.crx.financing.ingestion;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.enums.IngestionFormat;
+import lu.crx.financing.model.IngestionReport;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Ingestion service streams invoices from a CSV or NDJSON input into the invoice table as PENDING. The input is parsed
+ * line by line with constant memory, the creditor and debtor ids are validated against in-memory id sets and the valid
+ * invoices are inserted batch after batch, each batch in its own transaction unless the caller ingests the whole input
+ * in one.
+ * <p>
+ * CSV lines are {@code creditorId,debtorId,valueInCents,maturityDate} with an optional header line, NDJSON lines are
+ * objects with the same fields. Invalid invoices are rejected and counted, a failure stops the ingestion after the
+ * batches already written.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class IngestionService {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * The number of rejected invoices logged per ingestion, the following ones are only counted.
+     */
+    private static final int LOGGED_REJECTIONS = 10;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IngestionWriter ingestionWriter;
+    private final FinancingProperties financingProperties;
+
+    /**
+     * Method that ingests the invoices of the given input
+     *
+     * @param input  The input, read until its end
+     * @param format The format of the input
+     * @return The ingestion report
+     * @throws IOException when the input cannot be read
+     */
+    public IngestionReport ingest(InputStream input, IngestionFormat format) throws IOException {
+        long start = System.nanoTime();
+        Ingestion ingestion = new Ingestion(loadIds("SELECT id FROM creditor"), loadIds("SELECT id FROM debtor"),
+                new InvoiceBatch(financingProperties.getIngestion().getBatchSize()));
+
+        switch (format) {
+            case CSV -> parseCsv(input, ingestion);
+            case NDJSON -> parseNdjson(input, ingestion);
+            default -> throw new IllegalArgumentException("Unsupported ingestion format: " + format);
+        }
+        ingestion.flush();
+
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        IngestionReport report = new IngestionReport(ingestion.accepted, ingestion.rejected, elapsedNanos / 1_000_000,
+                ingestion.accepted * 1_000_000_000L / elapsedNanos);
+        log.info("Ingested {} invoices ({} rejected) in {} millis, {} invoices/s",
+                report.getAcceptedInvoices(), report.getRejectedInvoices(), report.getElapsedMillis(), report.getInvoicesPerSecond());
+        return report;
+    }
+
+    /**
+     * Method that parses CSV lines without any intermediate string per column
+     */
+    private void parseCsv(InputStream input, Ingestion ingestion) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 1 << 16);
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            // Skip the blank lines and the header line
+            if (line.isBlank() || (lineNumber == 1 && !Character.isDigit(line.charAt(0)))) {
+                continue;
+            }
+            int first = line.indexOf(',');
+            int second = line.indexOf(',', first + 1);
+            int third = line.indexOf(',', second + 1);
+            if (first < 0 || second < 0 || third < 0 || line.indexOf(',', third + 1) >= 0) {
+                ingestion.reject(lineNumber, "expected 4 columns");
+                continue;
+            }
+            try {
+                ingestion.add(lineNumber,
+                        Long.parseLong(line, 0, first, 10),
+                        Long.parseLong(line, first + 1, second, 10),
+                        Long.parseLong(line, second + 1, third, 10),
+                        parseEpochDay(line, third + 1, line.length()));
+            } catch (NumberFormatException | DateTimeException e) {
+                ingestion.reject(lineNumber, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Method that parses NDJSON objects with the streaming parser, unknown fields are ignored
+     */
+    private void parseNdjson(InputStream input, Ingestion ingestion) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(input)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                long lineNumber = parser.currentLocation().getLineNr();
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("Expected an invoice object at line: " + lineNumber);
+                }
+                long creditorId = -1;
+                long debtorId = -1;
+                long valueInCents = -1;
+                String maturityDate = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "creditorId" -> creditorId = parser.getValueAsLong(-1);
+                        case "debtorId" -> debtorId = parser.getValueAsLong(-1);
+                        case "valueInCents" -> valueInCents = parser.getValueAsLong(-1);
+                        case "maturityDate" -> maturityDate = parser.getValueAsString();
+                        default -> parser.skipChildren();
+                    }
+                }
+                if (maturityDate == null) {
+                    ingestion.reject(lineNumber, "missing maturityDate");
+                    continue;
+                }
+                try {
+                    ingestion.add(lineNumber, creditorId, debtorId, valueInCents, parseEpochDay(maturityDate, 0, maturityDate.length()));
+                } catch (DateTimeException e) {
+                    ingestion.reject(lineNumber, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that parses an ISO date (yyyy-MM-dd) in the given range
+     *
+     * @return The epoch day of the date
+     */
+    private static long parseEpochDay(CharSequence text, int begin, int end) {
+        if (end - begin != 10 || text.charAt(begin + 4) != '-' || text.charAt(begin + 7) != '-') {
+            throw new DateTimeException("Invalid maturity date: " + text.subSequence(begin, end));
+        }
+        try {
+            return LocalDate.of(Integer.parseInt(text, begin, begin + 4, 10), Integer.parseInt(text, begin + 5, begin + 7, 10),
+                    Integer.parseInt(text, begin + 8, end, 10)).toEpochDay();
+        } catch (NumberFormatException e) {
+            throw new DateTimeException("Invalid maturity date: " + text.subSequence(begin, end));
+        }
+    }
+
+    /**
+     * Method that loads the ids returned by the given query
+     *
+     * @return The sorted ids
+     */
+    private long[] loadIds(String sql) {
+        long[] ids = jdbcTemplate.queryForList(sql, Long.class).stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * The state of a single ingestion.
+     */
+    private class Ingestion {
+
+        private final long[] creditorIds;
+        private final long[] debtorIds;
+        private final InvoiceBatch batch;
+
+        private long accepted;
+        private long rejected;
+
+        Ingestion(long[] creditorIds, long[] debtorIds, InvoiceBatch batch) {
+            this.creditorIds = creditorIds;
+            this.debtorIds = debtorIds;
+            this.batch = batch;
+        }
+
+        void add(long lineNumber, long creditorId, long debtorId, long valueInCents, long maturityEpochDay) {
+            if (Arrays.binarySearch(creditorIds, creditorId) < 0) {
+                reject(lineNumber, "unknown creditor: " + creditorId);
+            } else if (Arrays.binarySearch(debtorIds, debtorId) < 0) {
+                reject(lineNumber, "unknown debtor: " + debtorId);
+            } else if (valueInCents <= 0) {
+                reject(lineNumber, "invalid value: " + valueInCents);
+            } else if (batch.add(creditorId, debtorId, valueInCents, maturityEpochDay)) {
+                flush();
+            }
+        }
+
+        void reject(long lineNumber, String reason) {
+            if (rejected++ < LOGGED_REJECTIONS) {
+                log.warn("Rejected invoice at line: {}, {}", lineNumber, reason);
+            }
+        }
+
+        void flush() {
+            if (batch.size() > 0) {
+                ingestionWriter.write(batch);
+                accepted += batch.size();
+                batch.clear();
+            }
+        }
+    }
+}
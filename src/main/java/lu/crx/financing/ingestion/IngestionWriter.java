@@ -0,0 +1,65 @@
+package lu.crx.financing.ingestion;
+
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import lombok.AllArgsConstructor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.enums.InvoiceStatus;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Ingestion writer inserts a batch of parsed invoices as PENDING with a single JDBC batch. The ids are drawn from the
+ * Hibernate generator of {@link Invoice}, so the ingested and the persisted invoices share the pooled invoice_seq
+ * ranges and never collide.
+ */
+@Service
+@AllArgsConstructor
+public class IngestionWriter {
+
+    private static final String INSERT_INVOICE =
+            "INSERT INTO invoice (id, creditor_id, debtor_id, value_in_cents, maturity_date, invoice_status) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Method that inserts the given batch in a single transaction
+     *
+     * @param batch The parsed invoices
+     */
+    @Transactional
+    void write(InvoiceBatch batch) {
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        BeforeExecutionGenerator generator = (BeforeExecutionGenerator) session.getFactory().getMappingMetamodel()
+                .getEntityDescriptor(Invoice.class).getGenerator();
+        for (int i = 0; i < batch.size(); i++) {
+            batch.ids[i] = (Long) generator.generate(session, null, null, EventType.INSERT);
+        }
+
+        String pending = InvoiceStatus.PENDING.getDescription();
+        jdbcTemplate.batchUpdate(INSERT_INVOICE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setLong(1, batch.ids[i]);
+                ps.setLong(2, batch.creditorIds[i]);
+                ps.setLong(3, batch.debtorIds[i]);
+                ps.setLong(4, batch.valuesInCents[i]);
+                ps.setObject(5, LocalDate.ofEpochDay(batch.maturityEpochDays[i]));
+                ps.setString(6, pending);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch.size();
+            }
+        });
+    }
+}
@@ -0,0 +1,46 @@
+package lu.crx.financing.ingestion;
+
+/**
+ * An invoice batch buffers the parsed invoices in primitive arrays until they are written, it is reused for every
+ * batch of an ingestion so that memory stays constant whatever the size of the input.
+ */
+class InvoiceBatch {
+
+    final long[] ids;
+    final long[] creditorIds;
+    final long[] debtorIds;
+    final long[] valuesInCents;
+    final long[] maturityEpochDays;
+
+    private int size;
+
+    InvoiceBatch(int capacity) {
+        ids = new long[capacity];
+        creditorIds = new long[capacity];
+        debtorIds = new long[capacity];
+        valuesInCents = new long[capacity];
+        maturityEpochDays = new long[capacity];
+    }
+
+    /**
+     * Method that adds an invoice to the batch
+     *
+     * @return true when the batch is full
+     */
+    boolean add(long creditorId, long debtorId, long valueInCents, long maturityEpochDay) {
+        creditorIds[size] = creditorId;
+        debtorIds[size] = debtorId;
+        valuesInCents[size] = valueInCents;
+        maturityEpochDays[size] = maturityEpochDay;
+        size++;
+        return size == ids.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
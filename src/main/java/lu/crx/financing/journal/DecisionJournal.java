@@ -0,0 +1,184 @@
+package lu.crx.financing.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decision journal is an append-only, memory-mapped write-behind log of financing decisions. The engine appends
+ * decisions at memory speed, the active segment is fsynced periodically and a background flusher applies the sealed
+ * segments to the database in large batches. Segments left by a crash are replayed when the application starts.
+ * <p>
+ * A decision lost in a crash before its fsync leaves the invoice PENDING in the database, so it is decided again by
+ * the next run. The unapplied segments are always applied before a run reads the pending invoices.
+ */
+@Slf4j
+@Component
+public class DecisionJournal implements SmartLifecycle {
+
+    private final FinancingProperties.Journal settings;
+    private final JournalApplier journalApplier;
+
+    private final Deque<JournalSegment> sealedSegments = new ArrayDeque<>();
+
+    /**
+     * Serializes the application of the sealed segments, appending is never blocked by it.
+     */
+    private final Object applyLock = new Object();
+
+    private Path directory;
+    private JournalSegment activeSegment;
+    private long nextSequence;
+    private ScheduledExecutorService flusher;
+    private volatile boolean running;
+
+    public DecisionJournal(FinancingProperties financingProperties, JournalApplier journalApplier) {
+        this.settings = financingProperties.getJournal();
+        this.journalApplier = journalApplier;
+    }
+
+    /**
+     * Method that recovers the segments left by a previous process, replays them and starts the background flusher
+     */
+    @Override
+    public void start() {
+        running = true;
+        if (!settings.isEnabled()) {
+            return;
+        }
+        directory = Paths.get(settings.getDirectory());
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                List<Path> segments = files.filter(path -> path.getFileName().toString().endsWith(JournalSegment.EXTENSION)).sorted().toList();
+                for (Path path : segments) {
+                    JournalSegment segment = JournalSegment.open(path);
+                    sealedSegments.add(segment);
+                    nextSequence = segment.getSequence() + 1;
+                }
+                log.info("Replaying {} unapplied journal segments", segments.size());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot recover the decision journal in: " + directory, e);
+        }
+        applySealedSegments();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            // the journal is drained by stop() when the context closes, the flusher must not keep the JVM alive
+            Thread thread = new Thread(runnable, "decision-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::force, settings.getFsyncInterval().toMillis(), settings.getFsyncInterval().toMillis(), TimeUnit.MILLISECONDS);
+        flusher.scheduleWithFixedDelay(this::flush, settings.getFlushInterval().toMillis(), settings.getFlushInterval().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Method that stops the background flusher after applying everything appended so far
+     */
+    @Override
+    public void stop() {
+        running = false;
+        if (flusher != null) {
+            flusher.shutdown();
+            drain();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Method that appends the given decisions to the active segment
+     *
+     * @param records The decisions
+     */
+    public synchronized void append(List<JournalRecord> records) {
+        for (JournalRecord journalRecord : records) {
+            if (activeSegment == null) {
+                activeSegment = JournalSegment.create(directory, nextSequence++, settings.getSegmentRecords());
+            }
+            if (!activeSegment.append(journalRecord)) {
+                seal();
+                activeSegment = JournalSegment.create(directory, nextSequence++, settings.getSegmentRecords());
+                activeSegment.append(journalRecord);
+            }
+        }
+    }
+
+    /**
+     * Method that makes the active segment durable and hands it over to the flusher
+     */
+    public synchronized void seal() {
+        if (activeSegment == null) {
+            return;
+        }
+        if (activeSegment.getSize() == 0) {
+            activeSegment.delete();
+        } else {
+            activeSegment.force();
+            sealedSegments.add(activeSegment);
+        }
+        activeSegment = null;
+    }
+
+    /**
+     * Method that seals the active segment and synchronously applies all the sealed segments
+     */
+    public void drain() {
+        seal();
+        applySealedSegments();
+    }
+
+    private synchronized void force() {
+        if (activeSegment != null) {
+            activeSegment.force();
+        }
+    }
+
+    private void flush() {
+        try {
+            applySealedSegments();
+        } catch (RuntimeException e) {
+            // the segment stays in place and is retried by the next flush
+            log.error("Applying the decision journal failed", e);
+        }
+    }
+
+    private void applySealedSegments() {
+        synchronized (applyLock) {
+            JournalSegment segment;
+            while ((segment = nextSealedSegment()) != null) {
+                long start = System.currentTimeMillis();
+                List<JournalRecord> applied = journalApplier.apply(segment.readAll());
+                log.info("Applied journal segment: {} with {} decisions ({} already applied) in {} millis",
+                        segment.getSequence(), segment.getSize(), segment.getSize() - applied.size(), System.currentTimeMillis() - start);
+                removeSealedSegment(segment);
+            }
+        }
+    }
+
+    private synchronized JournalSegment nextSealedSegment() {
+        return sealedSegments.peekFirst();
+    }
+
+    private synchronized void removeSealedSegment(JournalSegment segment) {
+        sealedSegments.removeFirst();
+        segment.delete();
+    }
+}
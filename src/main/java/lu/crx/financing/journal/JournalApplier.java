@@ -0,0 +1,143 @@
+package lu.crx.financing.journal;
+
+import jakarta.transaction.Transactional;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.model.ExposureDelta;
+import lu.crx.financing.services.ExposureService;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Journal applier applies journal records to the {@code invoice} and {@code financing_result} tables in JDBC batches.
+ * Applying is idempotent: an invoice is only updated while still PENDING and its financing result is only inserted
+ * along with that update, so replaying an already applied segment changes nothing. The exposure aggregates are
+ * updated in the same transaction, for the inserted financing results only.
+ * <p>
+ * With the capacity-constrained allocation the funding of the financed invoices is reserved in that transaction as
+ * well, so a record skipped or lost before it is applied never holds funding. An invoice whose funding was spent by
+ * another run meanwhile goes back to PENDING.
+ */
+@Slf4j
+@Component
+@AllArgsConstructor
+public class JournalApplier {
+
+    private static final String UPDATE_INVOICE =
+            "UPDATE invoice SET invoice_status = ? WHERE id = ? AND invoice_status = ?";
+
+    private static final String RESTORE_PENDING =
+            "UPDATE invoice SET invoice_status = ? WHERE id = ?";
+
+    private static final String INSERT_FINANCING_RESULT =
+            "INSERT INTO financing_result (invoice_id, initial_amount, early_payment_amount, financing_rate, financing_date, created_at, purchaser_id, "
+                    + "settings_version) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ExposureService exposureService;
+    private final FinancingProperties financingProperties;
+
+    /**
+     * Method that applies the given records in a single transaction
+     *
+     * @param records The records in append order
+     * @return The records actually applied, records of invoices no longer PENDING or left unfunded are skipped
+     */
+    @Transactional
+    public List<JournalRecord> apply(List<JournalRecord> records) {
+        if (records.isEmpty()) {
+            return records;
+        }
+        int[][] updated = jdbcTemplate.batchUpdate(UPDATE_INVOICE, records, records.size(), (ps, journalRecord) -> {
+            ps.setString(1, InvoiceStatus.fromId(journalRecord.getStatusId()).getDescription());
+            ps.setLong(2, journalRecord.getInvoiceId());
+            ps.setString(3, InvoiceStatus.PENDING.getDescription());
+        });
+
+        List<JournalRecord> applied = new ArrayList<>(records.size());
+        List<JournalRecord> financed = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            if (updated[0][i] > 0) {
+                JournalRecord journalRecord = records.get(i);
+                applied.add(journalRecord);
+                if (journalRecord.getStatusId() == InvoiceStatus.FINANCED.getId()) {
+                    financed.add(journalRecord);
+                }
+            }
+        }
+
+        if (!financed.isEmpty() && financingProperties.getAllocation().isCapacityConstrained()) {
+            List<JournalRecord> unfunded = reserveFunding(financed);
+            if (!unfunded.isEmpty()) {
+                jdbcTemplate.batchUpdate(RESTORE_PENDING, unfunded, unfunded.size(), (ps, journalRecord) -> {
+                    ps.setString(1, InvoiceStatus.PENDING.getDescription());
+                    ps.setLong(2, journalRecord.getInvoiceId());
+                });
+                financed.removeAll(unfunded);
+                applied.removeAll(unfunded);
+            }
+        }
+
+        if (!financed.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_FINANCING_RESULT, financed, financed.size(), (ps, journalRecord) -> {
+                ps.setLong(1, journalRecord.getInvoiceId());
+                ps.setLong(2, journalRecord.getInitialAmount());
+                ps.setLong(3, journalRecord.getEarlyPaymentAmount());
+                ps.setLong(4, journalRecord.getFinancingRate());
+                ps.setDate(5, Date.valueOf(journalRecord.getFinancingDate()));
+                ps.setTimestamp(6, Timestamp.valueOf(journalRecord.getCreatedAt()));
+                ps.setLong(7, journalRecord.getPurchaserId());
+                ps.setLong(8, journalRecord.getSettingsVersion());
+            });
+
+            ExposureDelta exposureDelta = new ExposureDelta();
+            financed.forEach(journalRecord -> exposureDelta.add(journalRecord.getPurchaserId(), journalRecord.getCreditorId(),
+                    journalRecord.getMaturityDate(), journalRecord.getFinancingDate(), journalRecord.getInitialAmount(),
+                    journalRecord.getEarlyPaymentAmount()));
+            exposureService.apply(exposureDelta);
+        }
+        return applied;
+    }
+
+    /**
+     * Method that reserves the funding of the given financed records, one reservation per purchaser and financing
+     * date. When another run spent part of the funding of a purchaser meanwhile, its records are reserved one by one
+     * until the funding is used up.
+     *
+     * @param financed The records of the invoices just FINANCED
+     * @return The records whose funding could not be reserved
+     */
+    private List<JournalRecord> reserveFunding(List<JournalRecord> financed) {
+        // The purchasers are reserved in id order, overlapping runs lock their funding rows in the same order
+        Map<Long, Map<LocalDate, List<JournalRecord>>> financedByPurchaser = new TreeMap<>();
+        for (JournalRecord journalRecord : financed) {
+            financedByPurchaser.computeIfAbsent(journalRecord.getPurchaserId(), purchaserId -> new TreeMap<>())
+                    .computeIfAbsent(journalRecord.getFinancingDate(), financingDate -> new ArrayList<>()).add(journalRecord);
+        }
+
+        List<JournalRecord> unfunded = new ArrayList<>();
+        financedByPurchaser.forEach((purchaserId, byFinancingDate) -> byFinancingDate.forEach((financingDate, records) -> {
+            long amountInCents = records.stream().mapToLong(JournalRecord::getEarlyPaymentAmount).sum();
+            if (exposureService.reserveFunding(purchaserId, financingDate, amountInCents)) {
+                return;
+            }
+            for (JournalRecord journalRecord : records) {
+                if (!exposureService.reserveFunding(purchaserId, financingDate, journalRecord.getEarlyPaymentAmount())) {
+                    log.warn("Funding of purchaser: {} was spent by another financing run, invoice: {} is left PENDING",
+                            purchaserId, journalRecord.getInvoiceId());
+                    unfunded.add(journalRecord);
+                }
+            }
+        }));
+        return unfunded;
+    }
+}
@@ -0,0 +1,110 @@
+package lu.crx.financing.journal;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.zip.CRC32C;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A journal record is the fixed size binary form of a financing decision for a single invoice.
+ * The purchaser id is 0 and the amounts are 0 for the decisions other than FINANCED.
+ */
+@Getter
+@Builder
+@ToString
+@AllArgsConstructor
+public class JournalRecord {
+
+    /**
+     * 10 long fields, the status id and the trailing checksum.
+     */
+    public static final int SIZE = 10 * Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private final long invoiceId;
+
+    private final long creditorId;
+
+    private final LocalDate maturityDate;
+
+    private final int statusId;
+
+    private final long purchaserId;
+
+    private final long financingRate;
+
+    private final long initialAmount;
+
+    private final long earlyPaymentAmount;
+
+    private final LocalDate financingDate;
+
+    private final LocalDateTime createdAt;
+
+    /**
+     * The settings version the decision was taken from.
+     */
+    private final long settingsVersion;
+
+    /**
+     * Method that writes the record at the current position of the given buffer
+     *
+     * @param buffer The buffer, with at least {@link #SIZE} remaining bytes
+     */
+    void writeTo(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putLong(invoiceId)
+                .putLong(creditorId)
+                .putLong(maturityDate.toEpochDay())
+                .putInt(statusId)
+                .putLong(purchaserId)
+                .putLong(financingRate)
+                .putLong(initialAmount)
+                .putLong(earlyPaymentAmount)
+                .putLong(financingDate.toEpochDay())
+                .putLong(createdAt.toInstant(ZoneOffset.UTC).toEpochMilli())
+                .putLong(settingsVersion);
+        buffer.putInt(checksum(buffer, start));
+    }
+
+    /**
+     * Method that reads a record at the current position of the given buffer
+     *
+     * @param buffer The buffer
+     * @return The record, or null when the bytes do not hold a complete record (never written or torn write)
+     */
+    static JournalRecord readFrom(ByteBuffer buffer) {
+        int start = buffer.position();
+        int expected = checksum(buffer, start);
+        buffer.position(start + SIZE - Integer.BYTES);
+        if (buffer.getInt() != expected || buffer.getLong(start) == 0) {
+            return null;
+        }
+        buffer.position(start);
+        JournalRecord journalRecord = new JournalRecord(
+                buffer.getLong(),
+                buffer.getLong(),
+                LocalDate.ofEpochDay(buffer.getLong()),
+                buffer.getInt(),
+                buffer.getLong(),
+                buffer.getLong(),
+                buffer.getLong(),
+                buffer.getLong(),
+                LocalDate.ofEpochDay(buffer.getLong()),
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(buffer.getLong()), ZoneOffset.UTC),
+                buffer.getLong());
+        buffer.position(start + SIZE);
+        return journalRecord;
+    }
+
+    private static int checksum(ByteBuffer buffer, int start) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(start, SIZE - Integer.BYTES));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,160 @@
+package lu.crx.financing.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * A journal segment is a memory-mapped, append-only file holding a fixed number of {@link JournalRecord}s.
+ * Records become durable when the segment is forced, a torn record at the tail is detected by its checksum
+ * and ends the segment on recovery.
+ */
+class JournalSegment implements Closeable {
+
+    static final String EXTENSION = ".seg";
+
+    private static final int MAGIC = 0x464A524E;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+
+    @Getter
+    private final long sequence;
+
+    @Getter
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final int capacity;
+
+    @Getter
+    private int size;
+
+    private JournalSegment(long sequence, Path path, FileChannel channel, MappedByteBuffer buffer, int capacity, int size) {
+        this.sequence = sequence;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.size = size;
+    }
+
+    /**
+     * Method that creates a new empty segment
+     *
+     * @param directory The journal directory
+     * @param sequence  The sequence number of the segment, defining the apply order
+     * @param capacity  The number of records the segment can hold
+     * @return The segment
+     */
+    static JournalSegment create(Path directory, long sequence, int capacity) {
+        Path path = directory.resolve(String.format("%020d%s", sequence, EXTENSION));
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * JournalRecord.SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(0);
+            return new JournalSegment(sequence, path, channel, buffer, capacity, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create journal segment: " + path, e);
+        }
+    }
+
+    /**
+     * Method that opens an existing segment, for instance left by a crashed run
+     *
+     * @param path The segment file
+     * @return The segment positioned after its last valid record
+     */
+    static JournalSegment open(Path path) {
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                channel.close();
+                throw new IllegalStateException("Not a journal segment of version " + VERSION + ": " + path);
+            }
+            int capacity = buffer.getInt();
+            buffer.getInt();
+
+            int size = 0;
+            while (size < capacity && JournalRecord.readFrom(buffer) != null) {
+                size++;
+            }
+            buffer.position(HEADER_SIZE + size * JournalRecord.SIZE);
+
+            String fileName = path.getFileName().toString();
+            long sequence = Long.parseLong(fileName.substring(0, fileName.length() - EXTENSION.length()));
+            return new JournalSegment(sequence, path, channel, buffer, capacity, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open journal segment: " + path, e);
+        }
+    }
+
+    /**
+     * Method that appends a record at memory speed, the record is durable only after {@link #force()}
+     *
+     * @param journalRecord The record
+     * @return false when the segment is full
+     */
+    boolean append(JournalRecord journalRecord) {
+        if (size == capacity) {
+            return false;
+        }
+        journalRecord.writeTo(buffer);
+        size++;
+        return true;
+    }
+
+    /**
+     * Method that writes the appended records to the storage device
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Method that reads all the valid records of the segment
+     *
+     * @return The records in append order
+     */
+    List<JournalRecord> readAll() {
+        List<JournalRecord> records = new ArrayList<>(size);
+        MappedByteBuffer view = buffer.duplicate();
+        view.position(HEADER_SIZE);
+        for (int i = 0; i < size; i++) {
+            records.add(JournalRecord.readFrom(view));
+        }
+        return records;
+    }
+
+    /**
+     * Method that removes the segment once its records are applied
+     */
+    void delete() {
+        close();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete journal segment: " + path, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close journal segment: " + path, e);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package lu.crx.financing.model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.function.DoubleSupplier;
+import lombok.Getter;
+import lu.crx.financing.config.FinancingProperties;
+
+/**
+ * Batch size controller tunes the number of invoices fetched per batch while a financing run is going on. The batches
+ * are grouped in windows, and the throughput (invoices/s over the fetch, decide and write time) of every window is
+ * compared with the best one seen so far: the size keeps moving in the same direction while the throughput improves,
+ * otherwise the direction is reversed and the step is reduced, until the step becomes negligible and the size is
+ * considered converged.
+ * <p>
+ * Heap pressure overrides the search: when the heap still in use after the last garbage collection exceeds the
+ * configured share, the size is halved and never grows above it again during the run.
+ */
+public class BatchSizeController {
+
+    /**
+     * The first step multiplies or divides the batch size by two.
+     */
+    private static final double INITIAL_STEP = 2.0;
+
+    /**
+     * Below this step the batch size is considered converged.
+     */
+    private static final double MIN_STEP = 1.1;
+
+    private final int minSize;
+
+    private final int windowBatches;
+
+    private final double heapThreshold;
+
+    private final DoubleSupplier heapUsage;
+
+    /**
+     * The upper bound of the batch size, lowered under heap pressure.
+     */
+    private int maxSize;
+
+    @Getter
+    private int batchSize;
+
+    @Getter
+    private boolean converged;
+
+    private double step = INITIAL_STEP;
+
+    private int direction = 1;
+
+    private int bestSize;
+
+    private double bestThroughput;
+
+    private int windowBatchCount;
+
+    private long windowInvoices;
+
+    private long windowNanos;
+
+    @Getter
+    private long batches;
+
+    @Getter
+    private long invoices;
+
+    private long fetchNanos;
+
+    private long decideNanos;
+
+    private long writeNanos;
+
+    public BatchSizeController(FinancingProperties.BatchSizing settings) {
+        this(settings, BatchSizeController::getHeapUsageAfterGc);
+    }
+
+    BatchSizeController(FinancingProperties.BatchSizing settings, DoubleSupplier heapUsage) {
+        this.minSize = Math.max(1, settings.getMinSize());
+        this.maxSize = Math.max(minSize, settings.getMaxSize());
+        this.batchSize = Math.min(Math.max(settings.getInitialSize(), minSize), maxSize);
+        this.bestSize = batchSize;
+        this.windowBatches = Math.max(1, settings.getWindowBatches());
+        this.heapThreshold = settings.getHeapThreshold();
+        this.heapUsage = heapUsage;
+        // A fixed batch size never moves
+        this.converged = !settings.isAdaptive();
+    }
+
+    /**
+     * Method that records the timings of a batch and adjusts the size of the next batches
+     *
+     * @param batchInvoices The number of invoices of the batch
+     * @param fetchNanos    The time spent fetching the batch
+     * @param decideNanos   The time spent deciding the batch
+     * @param writeNanos    The time spent writing the decisions of the batch
+     */
+    public void record(int batchInvoices, long fetchNanos, long decideNanos, long writeNanos) {
+        long batchNanos = fetchNanos + decideNanos + writeNanos;
+        this.batches++;
+        this.invoices += batchInvoices;
+        this.fetchNanos += fetchNanos;
+        this.decideNanos += decideNanos;
+        this.writeNanos += writeNanos;
+
+        // A short batch means the pending invoices ran out, its throughput is not representative
+        if (batchInvoices < batchSize) {
+            return;
+        }
+        windowBatchCount++;
+        windowInvoices += batchInvoices;
+        windowNanos += batchNanos;
+        if (windowBatchCount < windowBatches) {
+            return;
+        }
+        double throughput = windowInvoices * 1e9 / Math.max(1, windowNanos);
+        resetWindow();
+
+        if (heapUsage.getAsDouble() > heapThreshold && batchSize > minSize) {
+            // Back off and stay below the size the heap could not sustain
+            maxSize = Math.max(minSize, batchSize / 2);
+            batchSize = maxSize;
+            bestSize = maxSize;
+            bestThroughput = 0;
+            return;
+        }
+        if (converged) {
+            return;
+        }
+
+        if (throughput > bestThroughput) {
+            bestThroughput = throughput;
+            bestSize = batchSize;
+        } else {
+            // Going this way did not pay off, look on the other side of the best size with a smaller step
+            direction = -direction;
+            step = Math.sqrt(step);
+        }
+        moveFromBestSize();
+    }
+
+    /**
+     * Method that moves the batch size one step away from the best size in the current direction
+     */
+    private void moveFromBestSize() {
+        while (step >= MIN_STEP) {
+            int size = clamp((int) Math.round(direction > 0 ? bestSize * step : bestSize / step));
+            if (size != bestSize) {
+                batchSize = size;
+                return;
+            }
+            // The bound is reached, only the other direction is left
+            direction = -direction;
+            step = Math.sqrt(step);
+        }
+        batchSize = bestSize;
+        converged = true;
+    }
+
+    private void resetWindow() {
+        windowBatchCount = 0;
+        windowInvoices = 0;
+        windowNanos = 0;
+    }
+
+    private int clamp(int size) {
+        return Math.min(Math.max(size, minSize), maxSize);
+    }
+
+    public long getFetchNanosPerInvoice() {
+        return invoices == 0 ? 0 : fetchNanos / invoices;
+    }
+
+    public long getDecideNanosPerInvoice() {
+        return invoices == 0 ? 0 : decideNanos / invoices;
+    }
+
+    public long getWriteNanosPerInvoice() {
+        return invoices == 0 ? 0 : writeNanos / invoices;
+    }
+
+    /**
+     * Method that calculates the share of the maximum heap still in use after the last garbage collection, the
+     * garbage of the previous batches does not count as pressure
+     *
+     * @return The heap usage after the last garbage collection, between 0 and 1
+     */
+    private static double getHeapUsageAfterGc() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null) {
+                used += pool.getCollectionUsage().getUsed();
+            }
+        }
+        return (double) used / Runtime.getRuntime().maxMemory();
+    }
+}
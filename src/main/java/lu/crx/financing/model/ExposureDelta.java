@@ -0,0 +1,52 @@
+package lu.crx.financing.model;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import lu.crx.financing.entities.FinancingExposure;
+
+/**
+ * An exposure delta accumulates the financing results of a batch per exposure group, so that each group is
+ * updated once per batch. The groups are kept in key order, concurrent financing runs lock them in the same order
+ * and cannot deadlock on them.
+ */
+public class ExposureDelta {
+
+    private static final Comparator<FinancingExposure.Key> KEY_ORDER = Comparator
+            .comparingLong(FinancingExposure.Key::getPurchaserId)
+            .thenComparingLong(FinancingExposure.Key::getCreditorId)
+            .thenComparing(FinancingExposure.Key::getMaturityMonth)
+            .thenComparing(FinancingExposure.Key::getFinancingDate);
+
+    private final Map<FinancingExposure.Key, FinancingExposure> groups = new TreeMap<>(KEY_ORDER);
+
+    /**
+     * Method that adds a financing result to its exposure group
+     *
+     * @param purchaserId        The purchaser financing the invoice
+     * @param creditorId         The creditor of the invoice
+     * @param maturityDate       The maturity date of the invoice
+     * @param financingDate      The financing date
+     * @param valueInCents       The value of the invoice
+     * @param earlyPaymentAmount The early payment amount
+     */
+    public void add(long purchaserId, long creditorId, LocalDate maturityDate, LocalDate financingDate, long valueInCents, long earlyPaymentAmount) {
+        FinancingExposure.Key key = new FinancingExposure.Key(purchaserId, creditorId, maturityDate.withDayOfMonth(1), financingDate);
+        FinancingExposure exposure = groups.computeIfAbsent(key, k -> new FinancingExposure(
+                k.getPurchaserId(), k.getCreditorId(), k.getMaturityMonth(), k.getFinancingDate(), 0, 0, 0));
+
+        exposure.setFinancedInvoices(exposure.getFinancedInvoices() + 1);
+        exposure.setFinancedValueInCents(exposure.getFinancedValueInCents() + valueInCents);
+        exposure.setEarlyPaymentAmountInCents(exposure.getEarlyPaymentAmountInCents() + earlyPaymentAmount);
+    }
+
+    public Collection<FinancingExposure> getGroups() {
+        return groups.values();
+    }
+
+    public boolean isEmpty() {
+        return groups.isEmpty();
+    }
+}
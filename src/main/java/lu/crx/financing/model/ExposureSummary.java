@@ -0,0 +1,28 @@
+package lu.crx.financing.model;
+
+import java.time.LocalDate;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * An exposure summary is the total financed value and early payment amount of a purchaser for a creditor
+ * and a maturity month.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ExposureSummary {
+
+    private final long purchaserId;
+
+    private final long creditorId;
+
+    private final LocalDate maturityMonth;
+
+    private final long financedInvoices;
+
+    private final long financedValueInCents;
+
+    private final long earlyPaymentAmountInCents;
+}
@@ -0,0 +1,45 @@
+package lu.crx.financing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import lu.crx.financing.enums.InvoiceStatus;
+
+/**
+ * A financing decision is the outcome of the financing algorithm for all the invoices sharing the same
+ * creditor and maturity date. Only decisions with status FINANCED carry a purchaser and a financing rate. The
+ * purchaser is kept by id, decisions are shared by the workers of a run and outlive any persistence context.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class FinancingDecision {
+
+    private final InvoiceStatus status;
+
+    private final long purchaserId;
+
+    private final int financingRateInBps;
+
+    /**
+     * The business reason of a SUSPENDED decision.
+     */
+    private final String reason;
+
+    /**
+     * The settings version a FINANCED decision was taken from.
+     */
+    private final long settingsVersion;
+
+    public static FinancingDecision financed(long purchaserId, int financingRateInBps, long settingsVersion) {
+        return new FinancingDecision(InvoiceStatus.FINANCED, purchaserId, financingRateInBps, null, settingsVersion);
+    }
+
+    public static FinancingDecision of(InvoiceStatus status) {
+        return new FinancingDecision(status, 0, 0, null, 0);
+    }
+
+    public static FinancingDecision suspended(String reason) {
+        return new FinancingDecision(InvoiceStatus.SUSPENDED, 0, 0, reason, 0);
+    }
+}
@@ -0,0 +1,106 @@
+package lu.crx.financing.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lu.crx.financing.offerbook.OfferBook;
+import org.springframework.data.util.Pair;
+
+/**
+ * The financing run context holds the state shared by all the invoices of a single financing run.
+ * The financing date is frozen when the run starts so that a run straddling midnight stays consistent. The settings
+ * follow the offer book published by the {@code OfferBookService}, from one batch to the next.
+ */
+@Getter
+public class FinancingRunContext {
+
+    private final LocalDate financingDate;
+
+    private final LocalDateTime startedAt;
+
+    /**
+     * The settings snapshot of the run, replaced between batches when newer settings are published.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicReference<SettingsSnapshot> settingsSnapshot;
+
+    /**
+     * The live progress of the run.
+     */
+    private final FinancingRunProgress progress;
+
+    /**
+     * The budgets of the purchasers with a daily funding limit, null unless the allocation is capacity-constrained.
+     */
+    private final PurchaserBudgets budgets;
+
+    private final AtomicBoolean firstInvoiceProcessed = new AtomicBoolean();
+
+    public FinancingRunContext(LocalDateTime startedAt, OfferBook offerBook) {
+        this(startedAt, offerBook, new FinancingRunProgress(0, startedAt, 0));
+    }
+
+    public FinancingRunContext(LocalDateTime startedAt, OfferBook offerBook, FinancingRunProgress progress) {
+        this(startedAt, offerBook, progress, null);
+    }
+
+    public FinancingRunContext(LocalDateTime startedAt, OfferBook offerBook, FinancingRunProgress progress, PurchaserBudgets budgets) {
+        this.startedAt = startedAt;
+        this.financingDate = startedAt.toLocalDate();
+        this.settingsSnapshot = new AtomicReference<>(new SettingsSnapshot(offerBook));
+        this.progress = progress;
+        this.budgets = budgets;
+    }
+
+    /**
+     * Method that returns the offer book of the current settings snapshot
+     *
+     * @return The offer book
+     */
+    public OfferBook getOfferBook() {
+        return settingsSnapshot.get().getOfferBook();
+    }
+
+    /**
+     * Method that returns the offer rankings computed from the current settings snapshot
+     *
+     * @return The offer rankings keyed by (creditor id, maturity date)
+     */
+    public Map<Pair<Long, LocalDate>, OfferRanking> getRankings() {
+        return settingsSnapshot.get().getRankings();
+    }
+
+    /**
+     * Method that moves the run to the given offer book unless it already uses it, the batches deciding from the
+     * previous snapshot keep it until they are done
+     *
+     * @param offerBook The latest published offer book
+     * @return The settings snapshot to decide a batch from
+     */
+    public SettingsSnapshot useOfferBook(OfferBook offerBook) {
+        return settingsSnapshot.updateAndGet(snapshot -> snapshot.getOfferBook() == offerBook ? snapshot : new SettingsSnapshot(offerBook));
+    }
+
+    /**
+     * Method that calculates the financing term based on the given maturity date
+     *
+     * @param maturityDate The maturity date of the invoice
+     * @return financing term in days, negative or zero when the maturity date is not after the financing date
+     */
+    public int getFinancingTermInDays(LocalDate maturityDate) {
+        return (int) (maturityDate.toEpochDay() - financingDate.toEpochDay());
+    }
+
+    /**
+     * Method that marks an invoice as processed
+     *
+     * @return true only for the first processed invoice of the run
+     */
+    public boolean markInvoiceProcessed() {
+        return !firstInvoiceProcessed.get() && firstInvoiceProcessed.compareAndSet(false, true);
+    }
+}
@@ -0,0 +1,238 @@
+package lu.crx.financing.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import lombok.Setter;
+import lu.crx.financing.enums.InvoiceStatus;
+
+/**
+ * Financing run progress counts the invoices decided by a running financing run, it is updated by the writer after
+ * every batch and can be read at any time from another thread.
+ * <p>
+ * The current rate is measured between two reads at least {@link #RATE_SAMPLE_NANOS} apart, so a stuck run shows a
+ * rate dropping to zero while its average rate only slowly decreases.
+ */
+public class FinancingRunProgress {
+
+    private static final long RATE_SAMPLE_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * The id of the financing run record, 0 for a run not recorded in the ledger.
+     */
+    @Getter
+    private final long runId;
+
+    @Getter
+    private final LocalDateTime startedAt;
+
+    /**
+     * The number of PENDING invoices when the run started.
+     */
+    @Getter
+    private final long pendingAtStart;
+
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder[] invoicesByStatus = new LongAdder[InvoiceStatus.values().length];
+
+    /**
+     * The number of decided invoices which were PENDING, the others were re-evaluated.
+     */
+    private final LongAdder pendingProcessed = new LongAdder();
+
+    private final LongAdder skipped = new LongAdder();
+
+    private final LongAdder batches = new LongAdder();
+
+    private volatile long lastProgressNanos = startNanos;
+
+    /**
+     * The number of invoices of the last batch size in use.
+     */
+    @Getter
+    @Setter
+    private volatile int batchSize;
+
+    /**
+     * The number of PENDING invoices left to the next run because the time budget of the run was spent.
+     */
+    @Getter
+    @Setter
+    private volatile long deferredInvoices;
+
+    /**
+     * The earliest maturity date of the deferred invoices.
+     */
+    @Getter
+    @Setter
+    private volatile LocalDate earliestDeferredMaturityDate;
+
+    /**
+     * The millis since JVM start when the first invoice of the run was processed, 0 until then.
+     */
+    @Getter
+    @Setter
+    private volatile long timeToFirstInvoiceMillis;
+
+    /**
+     * The failure of the run, if any.
+     */
+    @Getter
+    @Setter
+    private volatile String error;
+
+    private long sampleNanos = startNanos;
+
+    private long sampleProcessed;
+
+    private double currentRate;
+
+    public FinancingRunProgress(long runId, LocalDateTime startedAt, long pendingAtStart) {
+        this.runId = runId;
+        this.startedAt = startedAt;
+        this.pendingAtStart = pendingAtStart;
+        for (int i = 0; i < invoicesByStatus.length; i++) {
+            invoicesByStatus[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Method that records the decision of an invoice
+     *
+     * @param currentStatus The status of the invoice before the decision
+     * @param decision      The decided status
+     */
+    public void record(InvoiceStatus currentStatus, InvoiceStatus decision) {
+        invoicesByStatus[decision.ordinal()].increment();
+        if (currentStatus == InvoiceStatus.PENDING) {
+            pendingProcessed.increment();
+        }
+    }
+
+    /**
+     * Method that records the decision of invoices settled together
+     *
+     * @param currentStatus The status of the invoices before the decision
+     * @param decision      The decided status
+     * @param invoices      The number of invoices
+     */
+    public void record(InvoiceStatus currentStatus, InvoiceStatus decision, long invoices) {
+        invoicesByStatus[decision.ordinal()].add(invoices);
+        if (currentStatus == InvoiceStatus.PENDING) {
+            pendingProcessed.add(invoices);
+        }
+    }
+
+    /**
+     * Method that records an invoice skipped because another run processed it
+     */
+    public void recordSkipped() {
+        skipped.increment();
+    }
+
+    /**
+     * Method that records the end of a batch
+     */
+    public void recordBatch() {
+        batches.increment();
+        lastProgressNanos = System.nanoTime();
+    }
+
+    public long getFinancedInvoices() {
+        return invoicesByStatus[InvoiceStatus.FINANCED.ordinal()].sum();
+    }
+
+    public long getNonFinancedInvoices() {
+        return invoicesByStatus[InvoiceStatus.NON_FINANCED.ordinal()].sum();
+    }
+
+    public long getCanceledInvoices() {
+        return invoicesByStatus[InvoiceStatus.CANCELED.ordinal()].sum();
+    }
+
+    public long getSuspendedInvoices() {
+        return invoicesByStatus[InvoiceStatus.SUSPENDED.ordinal()].sum();
+    }
+
+    /**
+     * Method that returns the eligible invoices left PENDING because no purchaser had funding left for them
+     *
+     * @return The number of unfunded invoices
+     */
+    public long getUnfundedInvoices() {
+        return invoicesByStatus[InvoiceStatus.PENDING.ordinal()].sum();
+    }
+
+    public long getSkippedInvoices() {
+        return skipped.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getProcessedInvoices() {
+        long processed = 0;
+        for (LongAdder invoices : invoicesByStatus) {
+            processed += invoices.sum();
+        }
+        return processed;
+    }
+
+    /**
+     * Method that estimates the invoices still to process, the invoices inserted during the run are not counted
+     *
+     * @return The PENDING invoices at start not decided yet
+     */
+    public long getRemainingInvoices() {
+        return Math.max(0, pendingAtStart - pendingProcessed.sum());
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    public long getMillisSinceLastProgress() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastProgressNanos);
+    }
+
+    /**
+     * Method that calculates the average rate since the start of the run
+     *
+     * @return The processed invoices per second
+     */
+    public long getInvoicesPerSecond() {
+        return getProcessedInvoices() * 1_000_000_000L / Math.max(1, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Method that calculates the rate over the last sample period, the average rate until the first period is over
+     *
+     * @return The processed invoices per second
+     */
+    public synchronized double getCurrentRate() {
+        long now = System.nanoTime();
+        long processed = getProcessedInvoices();
+        if (now - sampleNanos >= RATE_SAMPLE_NANOS) {
+            currentRate = (processed - sampleProcessed) * 1e9 / (now - sampleNanos);
+            sampleNanos = now;
+            sampleProcessed = processed;
+        } else if (sampleProcessed == 0) {
+            currentRate = processed * 1e9 / Math.max(1, now - startNanos);
+        }
+        return currentRate;
+    }
+
+    /**
+     * Method that estimates the time left at the current rate
+     *
+     * @return The estimated seconds left, -1 when the run makes no progress
+     */
+    public long getEtaSeconds() {
+        double rate = getCurrentRate();
+        return rate <= 0 ? -1 : (long) Math.ceil(getRemainingInvoices() / rate);
+    }
+}
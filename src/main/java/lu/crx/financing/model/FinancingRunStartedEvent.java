@@ -0,0 +1,18 @@
+package lu.crx.financing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Event published in the transaction of a financing run once its record is created, the run record is completed by
+ * transactional event listeners when this transaction commits or rolls back.
+ */
+@Getter
+@AllArgsConstructor
+public class FinancingRunStartedEvent {
+
+    /**
+     * The progress of the run.
+     */
+    private final FinancingRunProgress progress;
+}
@@ -0,0 +1,22 @@
+package lu.crx.financing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The outcome of an invoice ingestion.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class IngestionReport {
+
+    private final long acceptedInvoices;
+
+    private final long rejectedInvoices;
+
+    private final long elapsedMillis;
+
+    private final long invoicesPerSecond;
+}
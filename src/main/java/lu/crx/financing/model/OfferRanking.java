@@ -0,0 +1,105 @@
+package lu.crx.financing.model;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lu.crx.financing.enums.InvoiceStatus;
+
+/**
+ * An offer ranking holds the financing candidates of the invoices sharing the same creditor and maturity date, the
+ * eligible offers ordered by financing rate and then by purchaser id. It is computed once per settings snapshot and
+ * acts as the priority queue of the capacity-constrained allocation: the purchasers at its head whose budget is
+ * exhausted are skipped, so an invoice is usually allocated after a single reservation. The head only holds for the
+ * budgets it was moved with and until a reservation is given back, the next run or a released budget starts over
+ * from the cheapest candidate.
+ */
+public class OfferRanking {
+
+    /**
+     * The decision of the invoices when no offer is eligible (NON_FINANCED, CANCELED or SUSPENDED).
+     */
+    private final FinancingDecision outcome;
+
+    /**
+     * The FINANCED decisions of the eligible offers, the cheapest first.
+     */
+    @Getter
+    private final List<FinancingDecision> candidates;
+
+    /**
+     * The first candidate whose purchaser may still have funding left.
+     */
+    private final AtomicReference<Head> head = new AtomicReference<>();
+
+    private OfferRanking(FinancingDecision outcome, List<FinancingDecision> candidates) {
+        this.outcome = outcome;
+        this.candidates = candidates;
+    }
+
+    public static OfferRanking of(List<FinancingDecision> candidates) {
+        return candidates.isEmpty() ? of(FinancingDecision.of(InvoiceStatus.NON_FINANCED)) : new OfferRanking(null, List.copyOf(candidates));
+    }
+
+    public static OfferRanking of(FinancingDecision outcome) {
+        return new OfferRanking(outcome, List.of());
+    }
+
+    /**
+     * Method that returns the decision regardless of the funding limits
+     *
+     * @return The cheapest candidate, or the outcome when no offer is eligible
+     */
+    public FinancingDecision getBest() {
+        return candidates.isEmpty() ? outcome : candidates.get(0);
+    }
+
+    /**
+     * Method that allocates an invoice to the cheapest candidate able to fund it, its early payment amount is
+     * reserved out of the budget of the purchaser
+     *
+     * @param valueInCents The value of the invoice
+     * @param budgets      The budgets of the purchasers
+     * @return The FINANCED decision of the candidate, PENDING when no candidate has enough funding left: the invoice
+     * is eligible and waits for the funding of a later financing date
+     */
+    public FinancingDecision allocate(long valueInCents, PurchaserBudgets budgets) {
+        if (candidates.isEmpty()) {
+            return outcome;
+        }
+        // The releases are read before the budgets, a release after this point starts the next allocation over
+        long releases = budgets.getReleases();
+        Head current = head.get();
+        int first = current != null && current.getBudgets() == budgets && current.getReleases() == releases ? current.getIndex() : 0;
+        for (int i = first; i < candidates.size(); i++) {
+            FinancingDecision candidate = candidates.get(i);
+            long purchaserId = candidate.getPurchaserId();
+            if (budgets.reserve(purchaserId, valueInCents - candidate.getFinancingRateInBps())) {
+                return candidate;
+            }
+            // An exhausted purchaser at the head funds no invoice of this ranking until a reservation is given back
+            if (i == first && budgets.isExhausted(purchaserId)) {
+                Head next = new Head(budgets, releases, i + 1);
+                if (head.compareAndSet(current, next)) {
+                    current = next;
+                    first = i + 1;
+                }
+            }
+        }
+        return FinancingDecision.of(InvoiceStatus.PENDING);
+    }
+
+    /**
+     * The index of the first candidate worth a reservation, for the given budgets and number of releases.
+     */
+    @Getter
+    @AllArgsConstructor
+    private static class Head {
+
+        private final PurchaserBudgets budgets;
+
+        private final long releases;
+
+        private final int index;
+    }
+}
@@ -0,0 +1,117 @@
+package lu.crx.financing.model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Purchaser budgets hold the funding left for the financing date to the purchasers having a daily funding limit.
+ * A purchaser without limit has no budget and can always fund.
+ * <p>
+ * The budgets are reserved with a compare-and-set, the workers of a financing run deciding batches concurrently can
+ * never fund more than the limit of a purchaser between them. They are the view of a single run, the funding is
+ * reserved again in the database when the decisions are written, against the other runs.
+ */
+public class PurchaserBudgets {
+
+    /**
+     * The remaining funding in cents, keyed by purchaser id.
+     */
+    private final Map<Long, AtomicLong> remaining = new ConcurrentHashMap<>();
+
+    /**
+     * The number of reservations given back so far, an exhausted purchaser may have funding again once it changes.
+     */
+    private final AtomicLong releases = new AtomicLong();
+
+    /**
+     * Method that sets the budget of a purchaser
+     *
+     * @param purchaserId      The purchaser
+     * @param remainingInCents The funding left, a negative value counts as nothing left
+     */
+    public void setBudget(long purchaserId, long remainingInCents) {
+        remaining.put(purchaserId, new AtomicLong(Math.max(0, remainingInCents)));
+    }
+
+    /**
+     * Method that reserves the given amount out of the budget of a purchaser
+     *
+     * @param purchaserId   The purchaser
+     * @param amountInCents The amount to fund
+     * @return true if the purchaser has no limit or enough funding left, which is then reserved
+     */
+    public boolean reserve(long purchaserId, long amountInCents) {
+        AtomicLong budget = remaining.get(purchaserId);
+        if (budget == null) {
+            return true;
+        }
+        long left = budget.get();
+        while (left >= amountInCents) {
+            if (budget.compareAndSet(left, left - amountInCents)) {
+                return true;
+            }
+            left = budget.get();
+        }
+        return false;
+    }
+
+    /**
+     * Method that gives back a reservation whose invoice was not financed in the end
+     *
+     * @param purchaserId   The purchaser
+     * @param amountInCents The reserved amount
+     */
+    public void release(long purchaserId, long amountInCents) {
+        AtomicLong budget = remaining.get(purchaserId);
+        if (budget != null) {
+            budget.addAndGet(amountInCents);
+            // Counted after the funding is back, whoever sees the new count sees the funding too
+            releases.incrementAndGet();
+        }
+    }
+
+    /**
+     * Method that returns the number of reservations given back so far
+     *
+     * @return The number of releases
+     */
+    public long getReleases() {
+        return releases.get();
+    }
+
+    /**
+     * Method that drops the funding left to a purchaser, once the database refused a reservation the run took from
+     * its budget
+     *
+     * @param purchaserId The purchaser
+     */
+    public void exhaust(long purchaserId) {
+        AtomicLong budget = remaining.get(purchaserId);
+        if (budget != null) {
+            budget.set(0);
+        }
+    }
+
+    /**
+     * Method that checks whether a purchaser cannot fund anything anymore
+     *
+     * @param purchaserId The purchaser
+     * @return true if the purchaser has a limit and no funding left
+     */
+    public boolean isExhausted(long purchaserId) {
+        AtomicLong budget = remaining.get(purchaserId);
+        return budget != null && budget.get() <= 0;
+    }
+
+    /**
+     * Method that returns the funding left to a purchaser
+     *
+     * @param purchaserId The purchaser
+     * @return The remaining funding in cents, {@link Long#MAX_VALUE} for a purchaser without limit
+     */
+    public long getRemaining(long purchaserId) {
+        AtomicLong budget = remaining.get(purchaserId);
+        return budget == null ? Long.MAX_VALUE : budget.get();
+    }
+}
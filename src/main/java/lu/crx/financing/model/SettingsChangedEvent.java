@@ -0,0 +1,24 @@
+package lu.crx.financing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Event published when a purchaser, a purchaser financing settings entry or a creditor is modified, listeners
+ * interested in the committed settings use a transactional event listener.
+ */
+@Getter
+@AllArgsConstructor
+public class SettingsChangedEvent {
+
+    /**
+     * The modified entity.
+     */
+    private final Object entity;
+
+    /**
+     * Whether the change may change the financing decisions: the entity was added or removed, or a property read by
+     * the decisions was updated.
+     */
+    private final boolean financingChange;
+}
@@ -0,0 +1,28 @@
+package lu.crx.financing.model;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Getter;
+import lu.crx.financing.offerbook.OfferBook;
+import org.springframework.data.util.Pair;
+
+/**
+ * A settings snapshot pairs an {@link OfferBook} with the offer rankings computed from it during a financing run. A
+ * batch decides all its invoices from the snapshot current when it starts, so a settings change never mixes two
+ * versions within a batch, and the rankings of a version are never reused for another.
+ */
+@Getter
+public class SettingsSnapshot {
+
+    private final OfferBook offerBook;
+
+    /**
+     * The offer rankings already computed from this offer book, keyed by (creditor id, maturity date).
+     */
+    private final Map<Pair<Long, LocalDate>, OfferRanking> rankings = new ConcurrentHashMap<>();
+
+    public SettingsSnapshot(OfferBook offerBook) {
+        this.offerBook = offerBook;
+    }
+}
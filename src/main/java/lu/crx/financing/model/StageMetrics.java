@@ -0,0 +1,45 @@
+package lu.crx.financing.model;
+
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+
+/**
+ * Stage metrics collect the busy time and the number of processed invoices of a pipeline stage,
+ * the time spent waiting on the queues is not counted as busy.
+ */
+public class StageMetrics {
+
+    @Getter
+    private final String name;
+
+    @Getter
+    private final int workers;
+
+    private final LongAdder busyNanos = new LongAdder();
+
+    private final LongAdder invoices = new LongAdder();
+
+    public StageMetrics(String name, int workers) {
+        this.name = name;
+        this.workers = workers;
+    }
+
+    public void record(long startNanos, int processedInvoices) {
+        busyNanos.add(System.nanoTime() - startNanos);
+        invoices.add(processedInvoices);
+    }
+
+    public long getInvoices() {
+        return invoices.sum();
+    }
+
+    /**
+     * Method that calculates the utilization of the stage
+     *
+     * @param wallNanos The duration of the pipeline run
+     * @return The share of the available worker time the stage was busy, between 0 and 1
+     */
+    public double getUtilization(long wallNanos) {
+        return wallNanos == 0 ? 0 : (double) busyNanos.sum() / ((double) wallNanos * workers);
+    }
+}
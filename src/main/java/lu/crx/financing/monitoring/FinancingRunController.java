@@ -0,0 +1,35 @@
+package lu.crx.financing.monitoring;
+
+import java.util.Collection;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.model.FinancingRunProgress;
+import lu.crx.financing.services.FinancingRunService;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Financing run controller serves the progress of the runs going on and the ledger of the past runs, with the
+ * invoices decided per status and the unfunded invoices left PENDING. It is served with the ingest profile only, the
+ * same progress is exposed over JMX by the {@link FinancingRunMonitor}.
+ */
+@RestController
+@RequestMapping("/financing/runs")
+@AllArgsConstructor
+public class FinancingRunController {
+
+    private final FinancingRunService financingRunService;
+
+    @GetMapping("/active")
+    public Collection<FinancingRunProgress> getActiveRuns() {
+        return financingRunService.getActiveRuns();
+    }
+
+    @GetMapping
+    public List<FinancingRun> getHistory(@RequestParam(defaultValue = "20") int limit) {
+        return financingRunService.getHistory(limit);
+    }
+}
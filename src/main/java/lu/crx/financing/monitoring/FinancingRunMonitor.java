@@ -0,0 +1,57 @@
+package lu.crx.financing.monitoring;
+
+import lombok.AllArgsConstructor;
+import lu.crx.financing.model.FinancingRunProgress;
+import lu.crx.financing.services.FinancingRunService;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Financing run monitor exposes the progress of the runs going on in this instance over JMX, summed over the active
+ * runs. A run is stuck rather than slow when its current rate drops to zero and the time since its last batch keeps
+ * growing.
+ */
+@Component
+@ManagedResource(objectName = "lu.crx.financing:type=FinancingRuns", description = "Progress of the financing runs going on")
+@AllArgsConstructor
+public class FinancingRunMonitor {
+
+    private final FinancingRunService financingRunService;
+
+    @ManagedAttribute(description = "The number of financing runs going on")
+    public int getActiveRuns() {
+        return financingRunService.getActiveRuns().size();
+    }
+
+    @ManagedAttribute(description = "The invoices decided by the active runs")
+    public long getProcessedInvoices() {
+        return financingRunService.getActiveRuns().stream().mapToLong(FinancingRunProgress::getProcessedInvoices).sum();
+    }
+
+    @ManagedAttribute(description = "The eligible invoices left PENDING by the active runs because no purchaser had funding left")
+    public long getUnfundedInvoices() {
+        return financingRunService.getActiveRuns().stream().mapToLong(FinancingRunProgress::getUnfundedInvoices).sum();
+    }
+
+    @ManagedAttribute(description = "The invoices PENDING when the active runs started and not decided yet")
+    public long getRemainingInvoices() {
+        return financingRunService.getActiveRuns().stream().mapToLong(FinancingRunProgress::getRemainingInvoices).sum();
+    }
+
+    @ManagedAttribute(description = "The invoices decided per second over the last seconds")
+    public double getCurrentRate() {
+        return financingRunService.getActiveRuns().stream().mapToDouble(FinancingRunProgress::getCurrentRate).sum();
+    }
+
+    @ManagedAttribute(description = "The estimated seconds left at the current rate, -1 without progress")
+    public long getEtaSeconds() {
+        double rate = getCurrentRate();
+        return rate <= 0 ? -1 : (long) Math.ceil(getRemainingInvoices() / rate);
+    }
+
+    @ManagedAttribute(description = "The millis since the last batch of the least advancing active run")
+    public long getMillisSinceLastProgress() {
+        return financingRunService.getActiveRuns().stream().mapToLong(FinancingRunProgress::getMillisSinceLastProgress).max().orElse(0);
+    }
+}
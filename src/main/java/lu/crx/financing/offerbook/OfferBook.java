@@ -0,0 +1,260 @@
+package lu.crx.financing.offerbook;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import lu.crx.financing.entities.SettingsVersion;
+
+/**
+ * The offer book is an immutable, compact binary snapshot of the purchaser and creditor settings, stamped with the
+ * {@link SettingsVersion} it was built from. It is memory-mapped and read in place by the financing algorithm.
+ * <p>
+ * Layout: a 40-byte header (magic, format, settings epoch and version, creditor and offer counts), the creditors
+ * sorted by id (id, maximum financing rate, first offer, offer count) and their offers sorted by purchaser id
+ * (purchaser id, minimum financing term, annual rate, flags).
+ */
+public class OfferBook {
+
+    private static final int MAGIC = 0x46424F4B;
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int CREDITOR_SIZE = 20;
+    private static final int OFFER_SIZE = 20;
+
+    private static final int INVALID_FLAG = 1;
+
+    private final ByteBuffer buffer;
+
+    @Getter
+    private final UUID epoch;
+
+    @Getter
+    private final long version;
+
+    @Getter
+    private final int creditorCount;
+
+    @Getter
+    private final int offerCount;
+
+    private OfferBook(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.epoch = new UUID(buffer.getLong(8), buffer.getLong(16));
+        this.version = buffer.getLong(24);
+        this.creditorCount = buffer.getInt(32);
+        this.offerCount = buffer.getInt(36);
+    }
+
+    /**
+     * The offer of a purchaser for a creditor.
+     */
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class Offer {
+
+        private final long creditorId;
+
+        private final long purchaserId;
+
+        private final int minimumFinancingTermInDays;
+
+        private final int annualRateInBps;
+
+        /**
+         * Whether the purchaser has inconsistent settings for the creditor.
+         */
+        private final boolean invalid;
+    }
+
+    /**
+     * The financing settings of a creditor.
+     */
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class CreditorSettings {
+
+        private final long creditorId;
+
+        private final int maxFinancingRateInBps;
+    }
+
+    /**
+     * Method that serializes the given settings to the given file and maps it. The file is replaced atomically, a
+     * reader never sees a partially written offer book.
+     *
+     * @param file            The offer book file
+     * @param settingsVersion The settings version the offer book is built from
+     * @param creditors       The creditors
+     * @param offers          The offers of the purchasers
+     * @return The mapped offer book
+     */
+    public static OfferBook write(Path file, SettingsVersion settingsVersion, List<CreditorSettings> creditors, List<Offer> offers) {
+        List<CreditorSettings> sortedCreditors = creditors.stream().sorted(Comparator.comparingLong(CreditorSettings::getCreditorId)).toList();
+        List<Offer> sortedOffers = offers.stream()
+                .sorted(Comparator.comparingLong(Offer::getCreditorId).thenComparingLong(Offer::getPurchaserId))
+                .toList();
+
+        ByteBuffer content = ByteBuffer.allocate(HEADER_SIZE + sortedCreditors.size() * CREDITOR_SIZE + sortedOffers.size() * OFFER_SIZE);
+        content.putInt(MAGIC).putInt(FORMAT)
+                .putLong(settingsVersion.getEpoch().getMostSignificantBits())
+                .putLong(settingsVersion.getEpoch().getLeastSignificantBits())
+                .putLong(settingsVersion.getVersion())
+                .putInt(sortedCreditors.size())
+                .putInt(sortedOffers.size());
+
+        int offerIndex = 0;
+        for (CreditorSettings creditor : sortedCreditors) {
+            // Skip the offers of unknown creditors, they cannot be reached by a lookup
+            while (offerIndex < sortedOffers.size() && sortedOffers.get(offerIndex).getCreditorId() < creditor.getCreditorId()) {
+                offerIndex++;
+            }
+            int firstOffer = offerIndex;
+            while (offerIndex < sortedOffers.size() && sortedOffers.get(offerIndex).getCreditorId() == creditor.getCreditorId()) {
+                offerIndex++;
+            }
+            content.putLong(creditor.getCreditorId()).putInt(creditor.getMaxFinancingRateInBps()).putInt(firstOffer).putInt(offerIndex - firstOffer);
+        }
+        for (Offer offer : sortedOffers) {
+            content.putLong(offer.getPurchaserId())
+                    .putInt(offer.getMinimumFinancingTermInDays())
+                    .putInt(offer.getAnnualRateInBps())
+                    .putInt(offer.isInvalid() ? INVALID_FLAG : 0);
+        }
+
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            Files.write(temporaryFile, content.array());
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write offer book: " + file, e);
+        }
+        return open(file);
+    }
+
+    /**
+     * Method that maps an existing offer book file
+     *
+     * @param file The offer book file
+     * @return The offer book, null when the file is missing or not a valid offer book of the current format
+     */
+    public static OfferBook open(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            // The mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT
+                    || size != HEADER_SIZE + (long) buffer.getInt(32) * CREDITOR_SIZE + (long) buffer.getInt(36) * OFFER_SIZE) {
+                return null;
+            }
+            return new OfferBook(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open offer book: " + file, e);
+        }
+    }
+
+    /**
+     * Method that checks whether the offer book was built from the given settings version
+     *
+     * @param settingsVersion The settings version
+     * @return true if the offer book is up-to-date with the given version
+     */
+    public boolean isBuiltFrom(SettingsVersion settingsVersion) {
+        return epoch.equals(settingsVersion.getEpoch()) && version == settingsVersion.getVersion();
+    }
+
+    /**
+     * Method that finds the settings of the given creditor
+     *
+     * @param creditorId The creditor id
+     * @return The creditor settings, null when the creditor is unknown
+     */
+    public CreditorSettings getCreditorSettings(long creditorId) {
+        int position = findCreditor(creditorId);
+        return position < 0 ? null : new CreditorSettings(creditorId, buffer.getInt(position + 8));
+    }
+
+    /**
+     * Method that reads the settings of all the creditors
+     *
+     * @return The creditor settings sorted by creditor id
+     */
+    public List<CreditorSettings> getCreditors() {
+        List<CreditorSettings> creditors = new ArrayList<>(creditorCount);
+        for (int i = 0; i < creditorCount; i++) {
+            int position = HEADER_SIZE + i * CREDITOR_SIZE;
+            creditors.add(new CreditorSettings(buffer.getLong(position), buffer.getInt(position + 8)));
+        }
+        return creditors;
+    }
+
+    /**
+     * Method that reads the offers of the purchasers for the given creditor
+     *
+     * @param creditorId The creditor id
+     * @return The offers sorted by purchaser id, empty when the creditor is unknown
+     */
+    public List<Offer> getOffers(long creditorId) {
+        int position = findCreditor(creditorId);
+        if (position < 0) {
+            return List.of();
+        }
+        int firstOffer = buffer.getInt(position + 12);
+        int count = buffer.getInt(position + 16);
+
+        List<Offer> offers = new ArrayList<>(count);
+        int offersStart = HEADER_SIZE + creditorCount * CREDITOR_SIZE;
+        for (int i = firstOffer; i < firstOffer + count; i++) {
+            int offerPosition = offersStart + i * OFFER_SIZE;
+            offers.add(new Offer(creditorId, buffer.getLong(offerPosition), buffer.getInt(offerPosition + 8),
+                    buffer.getInt(offerPosition + 12), (buffer.getInt(offerPosition + 16) & INVALID_FLAG) != 0));
+        }
+        return offers;
+    }
+
+    /**
+     * Method that binary searches the creditor section, only absolute reads are used so the book is safe to be read
+     * concurrently
+     *
+     * @param creditorId The creditor id
+     * @return The position of the creditor entry, -1 when the creditor is unknown
+     */
+    private int findCreditor(long creditorId) {
+        int low = 0;
+        int high = creditorCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int position = HEADER_SIZE + middle * CREDITOR_SIZE;
+            long middleId = buffer.getLong(position);
+            if (middleId < creditorId) {
+                low = middle + 1;
+            } else if (middleId > creditorId) {
+                high = middle - 1;
+            } else {
+                return position;
+            }
+        }
+        return -1;
+    }
+}
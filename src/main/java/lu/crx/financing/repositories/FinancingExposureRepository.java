@@ -0,0 +1,35 @@
+package lu.crx.financing.repositories;
+
+import java.time.LocalDate;
+import java.util.List;
+import lu.crx.financing.entities.FinancingExposure;
+import lu.crx.financing.model.ExposureSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface FinancingExposureRepository extends JpaRepository<FinancingExposure, FinancingExposure.Key> {
+
+    /**
+     * Summarizes the exposure per purchaser, creditor and maturity month for the invoices financed in the given
+     * date range and maturing from the given month on.
+     */
+    @Query("SELECT new lu.crx.financing.model.ExposureSummary(e.purchaserId, e.creditorId, e.maturityMonth, "
+            + "SUM(e.financedInvoices), SUM(e.financedValueInCents), SUM(e.earlyPaymentAmountInCents)) "
+            + "FROM FinancingExposure e "
+            + "WHERE e.financingDate BETWEEN :financedFrom AND :financedTo AND e.maturityMonth >= :maturityMonthFrom "
+            + "GROUP BY e.purchaserId, e.creditorId, e.maturityMonth "
+            + "ORDER BY e.purchaserId, e.creditorId, e.maturityMonth")
+    List<ExposureSummary> summarize(@Param("financedFrom") LocalDate financedFrom,
+                                    @Param("financedTo") LocalDate financedTo,
+                                    @Param("maturityMonthFrom") LocalDate maturityMonthFrom);
+
+    /**
+     * Finds the (purchaser id, early payment amount) pairs of the invoices financed on the given date.
+     */
+    @Query("SELECT e.purchaserId, SUM(e.earlyPaymentAmountInCents) FROM FinancingExposure e "
+            + "WHERE e.financingDate = :financingDate GROUP BY e.purchaserId")
+    List<Object[]> sumFundingPerPurchaser(@Param("financingDate") LocalDate financingDate);
+}
@@ -0,0 +1,16 @@
+package lu.crx.financing.repositories;
+
+import java.util.List;
+import lu.crx.financing.entities.FinancingRun;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface FinancingRunRepository extends JpaRepository<FinancingRun, Long> {
+
+    /**
+     * Finds the latest financing runs, the most recent first.
+     */
+    List<FinancingRun> findAllByOrderByStartedAtDesc(Limit limit);
+}
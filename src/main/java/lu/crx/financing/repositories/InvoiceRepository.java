@@ -1,13 +1,74 @@
 package lu.crx.financing.repositories;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import lu.crx.financing.entities.Invoice;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
 
-    Page<Invoice> findAllByInvoiceStatus(String invoiceStatus, Pageable pageable);
+    /**
+     * Keyset pagination over the invoices with the given status, the batches may be read ahead of their persistence.
+     * The creditor and the debtor are fetched with the invoices, instead of one select each per batch. Ordered by the
+     * (constant) status too, so that H2 reads the (status, id) index in order and stops after the batch instead of
+     * sorting every invoice left.
+     */
+    @EntityGraph(attributePaths = {"creditor", "debtor"})
+    @Query("SELECT i FROM Invoice i WHERE i.invoiceStatus = :invoiceStatus AND i.id > :id ORDER BY i.invoiceStatus, i.id")
+    List<Invoice> findAllByInvoiceStatusAndIdGreaterThanOrderById(@Param("invoiceStatus") String invoiceStatus, @Param("id") long id,
+                                                                   Limit limit);
+
+    /**
+     * Keyset pagination over the invoices of a creditor with the given status maturing after the given date, served by
+     * the (creditor, status, maturity date) index.
+     */
+    @EntityGraph(attributePaths = {"creditor", "debtor"})
+    List<Invoice> findAllByCreditorIdAndInvoiceStatusAndMaturityDateAfterAndIdGreaterThanOrderById(
+            long creditorId, String invoiceStatus, LocalDate maturityDate, long id, Limit limit);
+
+    /**
+     * Keyset pagination over the invoices with the given status, the nearest maturity date first, served by the
+     * (status, maturity date, id) index read in order. The keyset is the maturity date and the id of the last invoice
+     * read.
+     */
+    @EntityGraph(attributePaths = {"creditor", "debtor"})
+    @Query("SELECT i FROM Invoice i WHERE i.invoiceStatus = :invoiceStatus AND i.maturityDate >= :maturityDate "
+            + "AND (i.maturityDate > :maturityDate OR i.id > :id) ORDER BY i.invoiceStatus, i.maturityDate, i.id")
+    List<Invoice> findAllByInvoiceStatusAfterMaturityDateAndId(@Param("invoiceStatus") String invoiceStatus,
+                                                               @Param("maturityDate") LocalDate maturityDate,
+                                                               @Param("id") long id, Limit limit);
+
+    /**
+     * Counts the invoices with the given status after the given keyset of the maturity date order.
+     */
+    @Query("SELECT COUNT(i) FROM Invoice i WHERE i.invoiceStatus = :invoiceStatus AND i.maturityDate >= :maturityDate "
+            + "AND (i.maturityDate > :maturityDate OR i.id > :id)")
+    long countByInvoiceStatusAfterMaturityDateAndId(@Param("invoiceStatus") String invoiceStatus,
+                                                    @Param("maturityDate") LocalDate maturityDate, @Param("id") long id);
+
+    long countByInvoiceStatus(String invoiceStatus);
+
+    long countByInvoiceStatusAndIdGreaterThan(String invoiceStatus, long id);
+
+    Optional<Invoice> findFirstByInvoiceStatusAndIdGreaterThanOrderByMaturityDateAscIdAsc(String invoiceStatus, long id);
+
+    /**
+     * Locks the given invoices still having the given status, until the end of the transaction. The invoices locked
+     * by another transaction are skipped instead of waited for.
+     */
+    @Query(value = "SELECT id FROM invoice WHERE id IN (:ids) AND invoice_status = :invoiceStatus FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockInvoicesWithStatus(@Param("ids") Collection<Long> ids, @Param("invoiceStatus") String invoiceStatus);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Invoice i SET i.invoiceStatus = :invoiceStatus WHERE i.id IN :ids")
+    int updateInvoiceStatus(@Param("ids") Collection<Long> ids, @Param("invoiceStatus") String invoiceStatus);
 }
@@ -0,0 +1,16 @@
+package lu.crx.financing.repositories;
+
+import java.time.LocalDate;
+import java.util.List;
+import lu.crx.financing.entities.PurchaserFunding;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PurchaserFundingRepository extends JpaRepository<PurchaserFunding, PurchaserFunding.Key> {
+
+    /**
+     * Finds the funding reserved for the purchasers on the given financing date.
+     */
+    List<PurchaserFunding> findAllByFinancingDate(LocalDate financingDate);
+}
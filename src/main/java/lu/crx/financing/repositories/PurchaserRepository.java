@@ -1,16 +1,30 @@
 package lu.crx.financing.repositories;
 
 import java.util.List;
-import lu.crx.financing.entities.Creditor;
 import lu.crx.financing.entities.Purchaser;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface PurchaserRepository extends JpaRepository<Purchaser, Long> {
 
-    @Query("SELECT p FROM Purchaser p JOIN p.purchaserFinancingSettings ps WHERE ps.creditor = :creditor")
-    List<Purchaser> findPurchasersByCreditor(@Param("creditor") Creditor creditor);
+    /**
+     * Finds all the purchasers with all their settings fetched.
+     */
+    @Query("SELECT DISTINCT p FROM Purchaser p LEFT JOIN FETCH p.purchaserFinancingSettings ps LEFT JOIN FETCH ps.creditor")
+    List<Purchaser> findAllWithSettings();
+
+    /**
+     * Finds the (purchaser id, creditor id) pairs having more than one financing settings entry.
+     */
+    @Query("SELECT p.id, ps.creditor.id FROM Purchaser p JOIN p.purchaserFinancingSettings ps "
+            + "GROUP BY p.id, ps.creditor.id HAVING COUNT(ps) > 1")
+    List<Object[]> findDuplicateCreditorSettings();
+
+    /**
+     * Finds the (purchaser id, daily funding limit) pairs of the purchasers having a daily funding limit.
+     */
+    @Query("SELECT p.id, p.dailyFundingLimitInCents FROM Purchaser p WHERE p.dailyFundingLimitInCents IS NOT NULL")
+    List<Object[]> findDailyFundingLimits();
 }
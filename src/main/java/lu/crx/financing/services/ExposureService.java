@@ -0,0 +1,164 @@
+package lu.crx.financing.services;
+
+import jakarta.transaction.Transactional;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.entities.PurchaserFunding;
+import lu.crx.financing.model.ExposureDelta;
+import lu.crx.financing.model.ExposureSummary;
+import lu.crx.financing.model.PurchaserBudgets;
+import lu.crx.financing.repositories.FinancingExposureRepository;
+import lu.crx.financing.repositories.PurchaserFundingRepository;
+import lu.crx.financing.repositories.PurchaserRepository;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Exposure service maintains the financing exposure aggregates and answers the exposure queries.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class ExposureService {
+
+    private static final String MERGE_EXPOSURE =
+            "MERGE INTO financing_exposure e USING (VALUES (CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS DATE), CAST(? AS DATE), "
+                    + "CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT))) "
+                    + "d (purchaser_id, creditor_id, maturity_month, financing_date, financed_invoices, financed_value_in_cents, early_payment_amount_in_cents) "
+                    + "ON e.purchaser_id = d.purchaser_id AND e.creditor_id = d.creditor_id "
+                    + "AND e.maturity_month = d.maturity_month AND e.financing_date = d.financing_date "
+                    + "WHEN MATCHED THEN UPDATE SET e.financed_invoices = e.financed_invoices + d.financed_invoices, "
+                    + "e.financed_value_in_cents = e.financed_value_in_cents + d.financed_value_in_cents, "
+                    + "e.early_payment_amount_in_cents = e.early_payment_amount_in_cents + d.early_payment_amount_in_cents "
+                    + "WHEN NOT MATCHED THEN INSERT (purchaser_id, creditor_id, maturity_month, financing_date, financed_invoices, "
+                    + "financed_value_in_cents, early_payment_amount_in_cents) VALUES (d.purchaser_id, d.creditor_id, d.maturity_month, "
+                    + "d.financing_date, d.financed_invoices, d.financed_value_in_cents, d.early_payment_amount_in_cents)";
+
+    private static final String REBUILD_EXPOSURE =
+            "INSERT INTO financing_exposure (purchaser_id, creditor_id, maturity_month, financing_date, financed_invoices, "
+                    + "financed_value_in_cents, early_payment_amount_in_cents) "
+                    + "SELECT fr.purchaser_id, i.creditor_id, DATE_TRUNC('MONTH', i.maturity_date), fr.financing_date, COUNT(*), "
+                    + "SUM(fr.initial_amount), SUM(fr.early_payment_amount) "
+                    + "FROM financing_result fr JOIN invoice i ON i.id = fr.invoice_id "
+                    + "GROUP BY fr.purchaser_id, i.creditor_id, DATE_TRUNC('MONTH', i.maturity_date), fr.financing_date";
+
+    private static final String RESERVE_FUNDING =
+            "MERGE INTO purchaser_funding f USING (SELECT p.id AS purchaser_id, CAST(? AS DATE) AS financing_date, CAST(? AS BIGINT) AS amount, "
+                    + "COALESCE(p.daily_funding_limit_in_cents, 9223372036854775807) AS funding_limit, "
+                    + "(SELECT COALESCE(SUM(e.early_payment_amount_in_cents), 0) FROM financing_exposure e "
+                    + "WHERE e.purchaser_id = p.id AND e.financing_date = CAST(? AS DATE)) AS exposure "
+                    + "FROM purchaser p WHERE p.id = ?) d "
+                    + "ON f.purchaser_id = d.purchaser_id AND f.financing_date = d.financing_date "
+                    + "WHEN MATCHED AND GREATEST(f.funded_in_cents, d.exposure) + d.amount <= d.funding_limit "
+                    + "THEN UPDATE SET f.funded_in_cents = GREATEST(f.funded_in_cents, d.exposure) + d.amount "
+                    + "WHEN NOT MATCHED AND d.exposure + d.amount <= d.funding_limit "
+                    + "THEN INSERT (purchaser_id, financing_date, funded_in_cents) VALUES (d.purchaser_id, d.financing_date, d.exposure + d.amount)";
+
+    private static final String REBUILD_FUNDING =
+            "INSERT INTO purchaser_funding (purchaser_id, financing_date, funded_in_cents) "
+                    + "SELECT purchaser_id, financing_date, SUM(early_payment_amount) FROM financing_result GROUP BY purchaser_id, financing_date";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FinancingExposureRepository financingExposureRepository;
+    private final PurchaserRepository purchaserRepository;
+    private final PurchaserFundingRepository purchaserFundingRepository;
+
+    /**
+     * Method that adds the given delta to the exposure aggregates, in the transaction of the financing results
+     *
+     * @param delta The exposure of a batch of financing results
+     */
+    @Transactional
+    public void apply(ExposureDelta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(MERGE_EXPOSURE, delta.getGroups(), delta.getGroups().size(), (ps, exposure) -> {
+            ps.setLong(1, exposure.getPurchaserId());
+            ps.setLong(2, exposure.getCreditorId());
+            ps.setDate(3, Date.valueOf(exposure.getMaturityMonth()));
+            ps.setDate(4, Date.valueOf(exposure.getFinancingDate()));
+            ps.setLong(5, exposure.getFinancedInvoices());
+            ps.setLong(6, exposure.getFinancedValueInCents());
+            ps.setLong(7, exposure.getEarlyPaymentAmountInCents());
+        });
+    }
+
+    /**
+     * Method that rebuilds the exposure aggregates and the funding of the purchasers from scratch out of the financing
+     * results
+     */
+    @Transactional
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.update("DELETE FROM financing_exposure");
+        int groups = jdbcTemplate.update(REBUILD_EXPOSURE);
+        jdbcTemplate.update("DELETE FROM purchaser_funding");
+        jdbcTemplate.update(REBUILD_FUNDING);
+        log.info("Rebuilt {} exposure groups in {} millis", groups, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Method that summarizes the outstanding exposure: the invoices financed in the given range and not matured yet
+     *
+     * @param financedFrom The first financing date
+     * @param financedTo   The last financing date
+     * @param currentDate  The current date
+     * @return The exposure per purchaser, creditor and maturity month
+     */
+    public List<ExposureSummary> getOutstandingExposure(LocalDate financedFrom, LocalDate financedTo, LocalDate currentDate) {
+        return financingExposureRepository.summarize(financedFrom, financedTo, currentDate.withDayOfMonth(1));
+    }
+
+    /**
+     * Method that calculates the funding left on the given financing date to the purchasers having a daily funding
+     * limit, out of the funding reserved by the runs and the exposure aggregates
+     *
+     * @param financingDate The financing date
+     * @return The budgets of the purchasers
+     */
+    public PurchaserBudgets getPurchaserBudgets(LocalDate financingDate) {
+        Map<Long, Long> funded = new HashMap<>();
+        for (Object[] funding : financingExposureRepository.sumFundingPerPurchaser(financingDate)) {
+            funded.put((Long) funding[0], ((Number) funding[1]).longValue());
+        }
+        // The funding is only reserved by the capacity-constrained runs, the exposure counts the other results as well
+        for (PurchaserFunding funding : purchaserFundingRepository.findAllByFinancingDate(financingDate)) {
+            funded.merge(funding.getPurchaserId(), funding.getFundedInCents(), Math::max);
+        }
+
+        PurchaserBudgets budgets = new PurchaserBudgets();
+        for (Object[] limit : purchaserRepository.findDailyFundingLimits()) {
+            long purchaserId = (Long) limit[0];
+            budgets.setBudget(purchaserId, (Long) limit[1] - funded.getOrDefault(purchaserId, 0L));
+        }
+        return budgets;
+    }
+
+    /**
+     * Method that reserves funding of a purchaser on the given financing date, in the transaction of the financing
+     * results. The reservation is a conditional update against the daily funding limit of the purchaser, the funding
+     * row stays locked until the transaction ends, so overlapping runs of any instance never fund more than the limit.
+     *
+     * @param purchaserId   The purchaser
+     * @param financingDate The financing date
+     * @param amountInCents The sum of the early payment amounts to fund
+     * @return true if the purchaser has no limit or enough funding left, which is then reserved
+     */
+    @Transactional
+    public boolean reserveFunding(long purchaserId, LocalDate financingDate, long amountInCents) {
+        Date date = Date.valueOf(financingDate);
+        try {
+            return jdbcTemplate.update(RESERVE_FUNDING, date, amountInCents, date, purchaserId) == 1;
+        } catch (DuplicateKeyException e) {
+            // Another run created the funding row of the day first, the reservation now updates it
+            return jdbcTemplate.update(RESERVE_FUNDING, date, amountInCents, date, purchaserId) == 1;
+        }
+    }
+}
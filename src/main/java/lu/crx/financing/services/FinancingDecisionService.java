@@ -0,0 +1,136 @@
+package lu.crx.financing.services;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.exception.InvoiceException;
+import lu.crx.financing.model.FinancingDecision;
+import lu.crx.financing.model.FinancingRunContext;
+import lu.crx.financing.model.OfferRanking;
+import lu.crx.financing.model.PurchaserBudgets;
+import lu.crx.financing.model.SettingsSnapshot;
+import lu.crx.financing.offerbook.OfferBook;
+import lu.crx.financing.utils.EligibilityCheckUtils;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Service;
+
+/**
+ * Financing decision service contains the financing algorithm. It does not persist anything and is safe to be used
+ * concurrently by several workers of the same financing run.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class FinancingDecisionService {
+
+    private final EligibilityCheckUtils eligibilityCheckUtils;
+    private final OfferBookService offerBookService;
+
+    /**
+     * Method that groups the given invoices by creditor and maturity date and ranks the offers once per group and
+     * settings version. The whole batch is decided from the latest published offer book.
+     * <p>
+     * Every invoice of a group gets the cheapest offer, unless the allocation is capacity-constrained: the invoices
+     * are then allocated in the given order to the cheapest offer whose purchaser has enough funding left, an invoice
+     * no eligible purchaser has funding left for stays PENDING until the limits of a later financing date.
+     *
+     * @param invoices The invoices that are about financing check
+     * @param context  The financing run context
+     * @return The invoices paired with their financing decision
+     */
+    public List<Pair<Invoice, FinancingDecision>> decide(List<Invoice> invoices, FinancingRunContext context) {
+        Map<Pair<Long, LocalDate>, List<Invoice>> groups = invoices.stream()
+                .collect(Collectors.groupingBy(invoice -> Pair.of(invoice.getCreditor().getId(), invoice.getMaturityDate()),
+                        LinkedHashMap::new, Collectors.toList()));
+
+        // Reading the published offer book never locks, a newer one only applies from the next batch on
+        SettingsSnapshot snapshot = context.useOfferBook(offerBookService.getCurrentOfferBook());
+        Map<Pair<Long, LocalDate>, OfferRanking> rankings = new HashMap<>();
+        groups.forEach((key, group) -> rankings.put(key, snapshot.getRankings()
+                .computeIfAbsent(key, k -> rank(group.get(0).getCreditor(), k.getSecond(), snapshot.getOfferBook(), context))));
+
+        List<Pair<Invoice, FinancingDecision>> decisions = new ArrayList<>(invoices.size());
+        PurchaserBudgets budgets = context.getBudgets();
+        if (budgets == null) {
+            groups.forEach((key, group) -> {
+                FinancingDecision decision = rankings.get(key).getBest();
+                group.forEach(invoice -> decisions.add(Pair.of(invoice, decision)));
+            });
+        } else {
+            // The order of the invoices decides which one gets the last funding of a purchaser
+            for (Invoice invoice : invoices) {
+                OfferRanking ranking = rankings.get(Pair.of(invoice.getCreditor().getId(), invoice.getMaturityDate()));
+                decisions.add(Pair.of(invoice, ranking.allocate(invoice.getValueInCents(), budgets)));
+            }
+        }
+        return decisions;
+    }
+
+    /**
+     * Method that based on the given creditor and maturity date executes the financing flow, up to the ranking of
+     * the eligible offers
+     *
+     * @param creditor     The creditor of the invoices
+     * @param maturityDate The maturity date of the invoices
+     * @param offerBook    The offer book of the batch
+     * @param context      The financing run context
+     * @return The ranking of the eligible offers
+     */
+    private OfferRanking rank(Creditor creditor, LocalDate maturityDate, OfferBook offerBook, FinancingRunContext context) {
+        // Calculate financing term in days
+        int financingTermInDays = context.getFinancingTermInDays(maturityDate);
+
+        if (financingTermInDays <= 0) {
+            return OfferRanking.of(FinancingDecision.of(InvoiceStatus.CANCELED));
+        }
+        log.info("Deciding financing for creditor: {} with maturity date: {}", creditor.getId(), maturityDate);
+
+        try {
+            // Read the offers of the purchasers for the given creditor from the settings snapshot
+            OfferBook.CreditorSettings creditorSettings = offerBook.getCreditorSettings(creditor.getId());
+            if (creditorSettings == null) {
+                return OfferRanking.of(FinancingDecision.of(InvoiceStatus.NON_FINANCED));
+            }
+
+            // Get eligible offers based on the given specs
+            List<OfferBook.Offer> eligibleOffers = eligibilityCheckUtils.getEligibleOffers(offerBook.getOffers(creditor.getId()), creditor,
+                    creditorSettings.getMaxFinancingRateInBps(), financingTermInDays);
+
+            log.info("Eligible purchasers found: {} for creditor: {} with maturity date: {}", eligibleOffers.size(), creditor.getId(), maturityDate);
+
+            // Rank the purchasers by financing rate, the best one first
+            List<FinancingDecision> candidates = rankOffers(eligibleOffers, financingTermInDays).stream()
+                    .map(offerAndRate -> FinancingDecision.financed(offerAndRate.getFirst().getPurchaserId(), offerAndRate.getSecond(),
+                            offerBook.getVersion()))
+                    .toList();
+            return OfferRanking.of(candidates);
+        } catch (InvoiceException e) {
+            return OfferRanking.of(FinancingDecision.suspended(e.getMessage()));
+        }
+    }
+
+    /**
+     *  Method that based on the given eligible offers calculates the offers with their rate, the best first
+     * @param eligibleOffers The eligible offers, sorted by purchaser id
+     * @param financingTermInDays The financing term in days
+     * @return The pairs of the offers with their financing rate, the lowest purchaser id wins a tie
+     */
+    private List<Pair<OfferBook.Offer, Integer>> rankOffers(List<OfferBook.Offer> eligibleOffers, int financingTermInDays) {
+        return eligibleOffers.stream()
+                // Calculate the financing rate in basis points (bps)
+                .map(offer -> Pair.of(offer, (offer.getAnnualRateInBps() * financingTermInDays) / 360))
+                // The sort is stable, the offers with the same rate stay sorted by purchaser id
+                .sorted(Comparator.comparingInt(Pair::getSecond))
+                .toList();
+    }
+}
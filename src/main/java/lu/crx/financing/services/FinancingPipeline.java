@@ -0,0 +1,168 @@
+package lu.crx.financing.services;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.model.FinancingDecision;
+import lu.crx.financing.model.FinancingRunContext;
+import lu.crx.financing.model.StageMetrics;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Service;
+
+/**
+ * Financing pipeline runs the financing as three stages connected by bounded queues: a reader prefetching the
+ * pending invoices, N deciders running the financing algorithm and a writer persisting the decisions per batch.
+ * A full queue blocks the upstream stage, so a slow stage applies backpressure instead of buffering the backlog.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class FinancingPipeline {
+
+    /**
+     * An empty batch marks the end of the stream, the stages never exchange empty batches otherwise.
+     */
+    private static final List<?> END_OF_STREAM = List.of();
+
+    private final FinancingDecisionService financingDecisionService;
+    private final FinancingWriter financingWriter;
+    private final FinancingProperties financingProperties;
+
+    /**
+     * Method that runs the financing pipeline until the given cursor returns no more pending invoices
+     *
+     * @param context The financing run context
+     * @param cursor  The cursor over the pending invoices
+     */
+    void run(FinancingRunContext context, PendingInvoiceCursor cursor) {
+        if (context.getBudgets() != null) {
+            // The deciders would race for the last funding of a purchaser, the allocation must follow the cursor order
+            throw new IllegalStateException("The capacity-constrained allocation requires a sequential run");
+        }
+        FinancingProperties.Pipeline settings = financingProperties.getPipeline();
+        int deciders = settings.getDeciders();
+        context.getProgress().setBatchSize(settings.getBatchSize());
+
+        BlockingQueue<List<Invoice>> readQueue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        BlockingQueue<List<Pair<Invoice, FinancingDecision>>> writeQueue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+
+        StageMetrics reader = new StageMetrics("reader", 1);
+        StageMetrics decider = new StageMetrics("decider", deciders);
+        StageMetrics writer = new StageMetrics("writer", 1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(deciders + 2);
+        CompletionService<Void> stages = new ExecutorCompletionService<>(executor);
+        AtomicInteger runningDeciders = new AtomicInteger(deciders);
+        long start = System.nanoTime();
+
+        try {
+            stages.submit(() -> read(cursor, readQueue, settings.getBatchSize(), deciders, reader), null);
+            for (int i = 0; i < deciders; i++) {
+                stages.submit(() -> decide(readQueue, writeQueue, runningDeciders, context, decider), null);
+            }
+            stages.submit(() -> write(writeQueue, context, writer), null);
+
+            // Wait for all the stages, the first failing stage stops the whole pipeline
+            for (int i = 0; i < deciders + 2; i++) {
+                stages.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Financing pipeline interrupted", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException
+                    ? runtimeException
+                    : new IllegalStateException("Financing pipeline failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long wallNanos = System.nanoTime() - start;
+        for (StageMetrics stage : List.of(reader, decider, writer)) {
+            log.info("Pipeline stage: {} with {} workers processed {} invoices, utilization: {}%",
+                    stage.getName(), stage.getWorkers(), stage.getInvoices(), Math.round(stage.getUtilization(wallNanos) * 100));
+        }
+    }
+
+    /**
+     * Reader stage, prefetches the pending invoices in the order of the cursor
+     */
+    private void read(PendingInvoiceCursor cursor, BlockingQueue<List<Invoice>> readQueue, int batchSize, int deciders, StageMetrics metrics) {
+        try {
+            while (true) {
+                long start = System.nanoTime();
+                List<Invoice> invoices = cursor.next(batchSize);
+                metrics.record(start, invoices.size());
+
+                if (invoices.isEmpty()) {
+                    log.info("No more pending invoices to process");
+                    break;
+                }
+                readQueue.put(invoices);
+            }
+            for (int i = 0; i < deciders; i++) {
+                readQueue.put(endOfStream());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Decider stage, the last decider to finish signals the end of the stream to the writer
+     */
+    private void decide(BlockingQueue<List<Invoice>> readQueue, BlockingQueue<List<Pair<Invoice, FinancingDecision>>> writeQueue,
+                        AtomicInteger runningDeciders, FinancingRunContext context, StageMetrics metrics) {
+        try {
+            while (true) {
+                List<Invoice> invoices = readQueue.take();
+                if (invoices.isEmpty()) {
+                    break;
+                }
+                long start = System.nanoTime();
+                List<Pair<Invoice, FinancingDecision>> decisions = financingDecisionService.decide(invoices, context);
+                metrics.record(start, invoices.size());
+                writeQueue.put(decisions);
+            }
+            if (runningDeciders.decrementAndGet() == 0) {
+                writeQueue.put(endOfStream());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writer stage, persists each batch of decisions in its own transaction
+     */
+    private void write(BlockingQueue<List<Pair<Invoice, FinancingDecision>>> writeQueue, FinancingRunContext context, StageMetrics metrics) {
+        try {
+            while (true) {
+                List<Pair<Invoice, FinancingDecision>> decisions = writeQueue.take();
+                if (decisions.isEmpty()) {
+                    break;
+                }
+                long start = System.nanoTime();
+                financingWriter.write(decisions, context);
+                metrics.record(start, decisions.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> endOfStream() {
+        return (List<T>) END_OF_STREAM;
+    }
+}
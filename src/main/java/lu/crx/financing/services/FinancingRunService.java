@@ -0,0 +1,146 @@
+package lu.crx.financing.services;
+
+import jakarta.transaction.Transactional;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.enums.FinancingRunStatus;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.model.FinancingRunProgress;
+import lu.crx.financing.model.FinancingRunStartedEvent;
+import lu.crx.financing.repositories.FinancingRunRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Financing run service keeps the ledger of the financing runs and the progress of the runs going on. A run record is
+ * created when the run starts and completed once the transaction of the run commits or rolls back, both in their own
+ * transaction, so a failed run leaves a FAILED record and a run still RUNNING after a crash stays visible as such.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FinancingRunService {
+
+    /**
+     * The maximum length of the error of a run record.
+     */
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final FinancingRunRepository financingRunRepository;
+    private final InvoiceRepository invoiceRepository;
+
+    /**
+     * The progress of the runs going on in this instance, keyed by run id.
+     */
+    private final Map<Long, FinancingRunProgress> activeRuns = new ConcurrentHashMap<>();
+
+    /**
+     * Method that records the start of a financing run, the caller publishes a {@link FinancingRunStartedEvent} in the
+     * transaction of the run to have the record completed
+     *
+     * @param startedAt The start of the run
+     * @return The progress of the run
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public FinancingRunProgress start(LocalDateTime startedAt) {
+        long pendingInvoices = invoiceRepository.countByInvoiceStatus(InvoiceStatus.PENDING.getDescription());
+        FinancingRun financingRun = financingRunRepository.save(FinancingRun.builder()
+                .startedAt(startedAt)
+                .runStatus(FinancingRunStatus.RUNNING.getDescription())
+                .pendingInvoices(pendingInvoices)
+                .build());
+
+        FinancingRunProgress progress = new FinancingRunProgress(financingRun.getId(), startedAt, pendingInvoices);
+        activeRuns.put(progress.getRunId(), progress);
+        log.info("Financing run: {} started with {} pending invoices", progress.getRunId(), pendingInvoices);
+        return progress;
+    }
+
+    /**
+     * Method that completes the record of a run whose transaction committed
+     *
+     * @param event The start of the run
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void onRunCommitted(FinancingRunStartedEvent event) {
+        finish(event.getProgress(), FinancingRunStatus.COMPLETED);
+    }
+
+    /**
+     * Method that completes the record of a run whose transaction rolled back
+     *
+     * @param event The start of the run
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_ROLLBACK)
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void onRunRolledBack(FinancingRunStartedEvent event) {
+        FinancingRunProgress progress = event.getProgress();
+        if (progress.getError() == null) {
+            progress.setError("Financing transaction rolled back");
+        }
+        finish(progress, FinancingRunStatus.FAILED);
+    }
+
+    /**
+     * Method that returns the progress of the runs going on in this instance
+     *
+     * @return The progress of the active runs
+     */
+    public Collection<FinancingRunProgress> getActiveRuns() {
+        return activeRuns.values();
+    }
+
+    /**
+     * Method that returns the latest runs of the ledger
+     *
+     * @param limit The maximum number of runs
+     * @return The runs, the most recent first
+     */
+    public List<FinancingRun> getHistory(int limit) {
+        return financingRunRepository.findAllByOrderByStartedAtDesc(Limit.of(limit));
+    }
+
+    /**
+     * Method that copies the final progress of a run to its record
+     *
+     * @param progress The progress of the run
+     * @param status   The final status of the run
+     */
+    private void finish(FinancingRunProgress progress, FinancingRunStatus status) {
+        activeRuns.remove(progress.getRunId());
+        FinancingRun financingRun = financingRunRepository.findById(progress.getRunId())
+                .orElseThrow(() -> new IllegalStateException("Unknown financing run: " + progress.getRunId()));
+
+        financingRun.setFinishedAt(LocalDateTime.now());
+        financingRun.setRunStatus(status.getDescription());
+        financingRun.setFinancedInvoices(progress.getFinancedInvoices());
+        financingRun.setNonFinancedInvoices(progress.getNonFinancedInvoices());
+        financingRun.setCanceledInvoices(progress.getCanceledInvoices());
+        financingRun.setSuspendedInvoices(progress.getSuspendedInvoices());
+        financingRun.setUnfundedInvoices(progress.getUnfundedInvoices());
+        financingRun.setSkippedInvoices(progress.getSkippedInvoices());
+        financingRun.setBatches(progress.getBatches());
+        financingRun.setDeferredInvoices(progress.getDeferredInvoices());
+        financingRun.setEarliestDeferredMaturityDate(progress.getEarliestDeferredMaturityDate());
+        financingRun.setBatchSize(progress.getBatchSize());
+        financingRun.setElapsedMillis(progress.getElapsedMillis());
+        financingRun.setTimeToFirstInvoiceMillis(progress.getTimeToFirstInvoiceMillis());
+        financingRun.setInvoicesPerSecond(progress.getInvoicesPerSecond());
+        if (progress.getError() != null) {
+            financingRun.setError(progress.getError().length() > MAX_ERROR_LENGTH
+                    ? progress.getError().substring(0, MAX_ERROR_LENGTH) : progress.getError());
+        }
+        log.info("Financing run: {} {} with {} processed invoices in {} millis, {} invoices/s", financingRun.getId(),
+                financingRun.getRunStatus(), progress.getProcessedInvoices(), financingRun.getElapsedMillis(), financingRun.getInvoicesPerSecond());
+    }
+}
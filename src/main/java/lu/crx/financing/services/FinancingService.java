@@ -3,25 +3,20 @@ package lu.crx.financing.services;
 import jakarta.transaction.Transactional;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.Period;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Objects;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import lu.crx.financing.entities.Creditor;
-import lu.crx.financing.entities.FinancingResult;
+import lu.crx.financing.config.FinancingProperties;
 import lu.crx.financing.entities.Invoice;
-import lu.crx.financing.enums.InvoiceStatus;
-import lu.crx.financing.entities.Purchaser;
-import lu.crx.financing.entities.PurchaserFinancingSettings;
-import lu.crx.financing.exception.InvoiceException;
-import lu.crx.financing.repositories.FinancingResultRepository;
+import lu.crx.financing.journal.DecisionJournal;
+import lu.crx.financing.model.BatchSizeController;
+import lu.crx.financing.model.FinancingDecision;
+import lu.crx.financing.model.FinancingRunContext;
+import lu.crx.financing.model.FinancingRunProgress;
+import lu.crx.financing.model.FinancingRunStartedEvent;
+import lu.crx.financing.model.PurchaserBudgets;
 import lu.crx.financing.repositories.InvoiceRepository;
-import lu.crx.financing.repositories.PurchaserRepository;
-import lu.crx.financing.utils.EligibilityCheckUtils;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Service;
 
@@ -31,9 +26,17 @@ import org.springframework.stereotype.Service;
 public class FinancingService {
 
     private final InvoiceRepository invoiceRepository;
-    private final PurchaserRepository purchaserRepository;
-    private final FinancingResultRepository financingResultRepository;
-    private final EligibilityCheckUtils eligibilityCheckUtils;
+    private final OfferBookService offerBookService;
+    private final FinancingDecisionService financingDecisionService;
+    private final FinancingWriter financingWriter;
+    private final FinancingPipeline financingPipeline;
+    private final FinancingProperties financingProperties;
+    private final DecisionJournal decisionJournal;
+    private final ReevaluationService reevaluationService;
+    private final FinancingRunService financingRunService;
+    private final ExposureService exposureService;
+    private final PreClassificationService preClassificationService;
+    private final ApplicationEventPublisher applicationEventPublisher;
 
     /**
      * Method for processing the financing
@@ -41,153 +44,109 @@ public class FinancingService {
     @Transactional
     public void finance() {
         long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
         log.info("Financing started");
-        // Set batch size
-        int batchSize = 10;
-        int page = 0;
 
-        // Batch process invoices using pagination
-        while (true) {
-            Pageable pageable = PageRequest.of(page, batchSize);
-            List<Invoice> invoices = invoiceRepository.findAllByInvoiceStatus(InvoiceStatus.PENDING.getDescription(), pageable).getContent();
-
-            if (invoices.isEmpty()) {
-                log.info("No more pending invoices to process");
-                break;
-            }
-            invoices.forEach(this::processInvoice);
-
-        }
-        long end = System.currentTimeMillis();
-        long diff = end - start;
-        log.info("Financing completed in {} millis", diff);
-
-    }
+        // The run record is completed once the transaction of the run commits or rolls back
+        LocalDateTime startedAt = LocalDateTime.now();
+        FinancingRunProgress progress = financingRunService.start(startedAt);
+        applicationEventPublisher.publishEvent(new FinancingRunStartedEvent(progress));
 
-    /**
-     * Method that based on the given invoice executes the financing flow
-     *
-     * @param invoice The invoice that is about financing check
-     */
-    private void processInvoice(Invoice invoice) {
-        log.info("Starting invoice processing for invoice: {}", invoice.getId());
         try {
-            LocalDate currentDate = LocalDate.now();
-
-            if (invoice.getMaturityDate().isAfter(currentDate)) {
-                log.info("Processing invoice: {} with maturity date: {}", invoice.getId(), invoice.getMaturityDate());
-
-                // Calculate financing term in days
-                int financingTermInDays = calculateFinancingTerm(invoice.getMaturityDate());
-
-                // Get the creditor
-                Creditor creditor = invoice.getCreditor();
-
-                // Find the purchasers that have settings for the given creditor
-                List<Purchaser> purchasers = purchaserRepository.findPurchasersByCreditor(creditor);
+            boolean journalEnabled = financingProperties.getJournal().isEnabled();
+            if (journalEnabled) {
+                // Decisions still in the journal must reach the database before the pending invoices are read
+                decisionJournal.drain();
+            }
 
-                // Get eligible purchasers based on the given specs
-                List<Purchaser> eligiblePurchasers = eligibilityCheckUtils.getEligiblePurchasers(purchasers, creditor, financingTermInDays);
+            // Freeze the financing date and the settings snapshot once for the whole run
+            PurchaserBudgets budgets = financingProperties.getAllocation().isCapacityConstrained()
+                    ? exposureService.getPurchaserBudgets(startedAt.toLocalDate()) : null;
+            FinancingRunContext context = new FinancingRunContext(startedAt, offerBookService.getOfferBook(), progress, budgets);
 
-                log.info("Eligible purchasers found: {} for invoice: {}", eligiblePurchasers.size(), invoice.getId());
+            if (financingProperties.getReevaluation().isEnabled()) {
+                // Give the NON_FINANCED invoices of the creditors whose settings changed a new chance
+                reevaluationService.reevaluate(context);
+            }
 
-                if (!eligiblePurchasers.isEmpty()) {
-                    // Select the purchaser with the best financing rate
-                    Pair<Purchaser, Integer> selectedPurchaserAndRate = selectPurchaser(eligiblePurchasers, creditor, financingTermInDays);
-                    log.info("Selected purchaser: {} with financing rate: {} for invoice: {}", selectedPurchaserAndRate.getFirst(), selectedPurchaserAndRate.getSecond(), invoice.getId());
+            if (financingProperties.getPreClassification().isEnabled()) {
+                // Only the invoices some purchaser may finance reach the financing algorithm
+                preClassificationService.settle(context);
+            }
 
-                    // Perform financing and update the invoice status
-                    performFinancing(invoice, selectedPurchaserAndRate);
-                } else {
-                    log.info("No eligible purchasers for invoice: {}", invoice.getId());
-                    invoice.setInvoiceStatus(InvoiceStatus.NON_FINANCED.getDescription());
-                }
+            // The time budget of the run starts with the run, the invoices left when it is spent are deferred
+            FinancingProperties.Scheduling scheduling = financingProperties.getScheduling();
+            PendingInvoiceCursor cursor = new PendingInvoiceCursor(invoiceRepository, scheduling.isMaturityFirst(), scheduling.getTimeBudget(), startNanos);
+            if (financingProperties.getPipeline().isEnabled()) {
+                // Each batch is persisted in its own transaction by the writer stage
+                financingPipeline.run(context, cursor);
             } else {
-                log.error("Maturity date: {} for invoice: {} is before the current date: {}. Marking invoice as canceled.", invoice.getMaturityDate(), invoice.getId(), currentDate);
-                invoice.setInvoiceStatus(InvoiceStatus.CANCELED.getDescription());
+                financeSequentially(context, cursor);
+            }
+            if (cursor.isExpired()) {
+                reportDeferredInvoices(context, cursor, scheduling);
             }
 
-            invoiceRepository.save(invoice);
-            log.info("Finished processing for invoice: {}", invoice.getId());
-        } catch (Exception e) {
-            if (e instanceof InvoiceException) {
-                log.error(e.getMessage());
-                invoice.setInvoiceStatus(InvoiceStatus.SUSPENDED.getDescription());
-                invoiceRepository.save(invoice);
-            } else {
-                throw e;
+            if (journalEnabled) {
+                // Hand the last decisions over to the background flusher
+                decisionJournal.seal();
             }
 
+            long end = System.currentTimeMillis();
+            long diff = end - start;
+            log.info("Financing completed in {} millis, {} distinct decisions taken", diff, context.getRankings().size());
+        } catch (RuntimeException e) {
+            progress.setError(e.toString());
+            throw e;
         }
     }
 
     /**
-     * Method that performs financing results and updates the DB.
-     * @param invoice The invoice that is about financing check
-     * @param selectedPurchaserAndRate The selected purchaser with his rate
-     */
-    private void performFinancing(Invoice invoice, Pair<Purchaser, Integer> selectedPurchaserAndRate) {
-        Purchaser selectedPurchaser = selectedPurchaserAndRate.getFirst();
-        int financingRate = selectedPurchaserAndRate.getSecond();
-
-        // Calculate the early payment amount
-        long earlyPaymentAmount = invoice.getValueInCents() - financingRate;
-
-        invoice.setInvoiceStatus(InvoiceStatus.FINANCED.getDescription());
-
-        FinancingResult financingResult = FinancingResult.builder()
-                .invoiceId(invoice.getId())
-                .initialAmount(invoice.getValueInCents())
-                .earlyPaymentAmount(earlyPaymentAmount)
-                .financingDate(LocalDate.now())
-                .createdAt(LocalDateTime.now())
-                .financingRate(financingRate)
-                .purchaser(selectedPurchaser)
-                .build();
-
-        financingResultRepository.save(financingResult);
-    }
-
-    /**
-     * Method that calculates the financing term based on the given maturity date
+     * Method that fetches, decides and persists the pending invoices batch after batch
      *
-     * @param maturityDate The maturity date of the invoice
-     * @return financing term in days
+     * @param context The financing run context
+     * @param cursor  The cursor over the pending invoices
      */
-    private int calculateFinancingTerm(LocalDate maturityDate) {
-        // Calculate the number of days between the two dates
-        Period period = Period.between(LocalDate.now(), maturityDate);
-        return period.getDays();
+    private void financeSequentially(FinancingRunContext context, PendingInvoiceCursor cursor) {
+        // The batch size is tuned from the measured fetch, decide and write time of the previous batches
+        BatchSizeController batchSizeController = new BatchSizeController(financingProperties.getBatchSizing());
+
+        // Batch process invoices using keyset pagination, the decisions of a batch may not be persisted yet
+        while (true) {
+            context.getProgress().setBatchSize(batchSizeController.getBatchSize());
+            long fetchStart = System.nanoTime();
+            List<Invoice> invoices = cursor.next(batchSizeController.getBatchSize());
 
+            if (invoices.isEmpty()) {
+                log.info("No more pending invoices to process");
+                break;
+            }
+            long decideStart = System.nanoTime();
+            List<Pair<Invoice, FinancingDecision>> decisions = financingDecisionService.decide(invoices, context);
+            long writeStart = System.nanoTime();
+            financingWriter.write(decisions, context);
+            batchSizeController.record(invoices.size(), decideStart - fetchStart, writeStart - decideStart, System.nanoTime() - writeStart);
+        }
+
+        log.info("Batch size: {} invoices ({}) after {} batches, fetch: {} / decide: {} / write: {} nanos per invoice",
+                batchSizeController.getBatchSize(), batchSizeController.isConverged() ? "converged" : "still tuning",
+                batchSizeController.getBatches(), batchSizeController.getFetchNanosPerInvoice(),
+                batchSizeController.getDecideNanosPerInvoice(), batchSizeController.getWriteNanosPerInvoice());
     }
 
     /**
-     *  Method that based on the given eligible purchasers calculates the best purchaser with his rate
-     * @param eligiblePurchasers The eligile purchasers
-     * @param creditor The given creditor
-     * @param financingTermInDays The financing term in days
-     * @return The pair of the best purchaser with his financing rate
+     * Method that reports the pending invoices left to the next run once the time budget of the run is spent
+     *
+     * @param context    The financing run context
+     * @param cursor     The cursor over the pending invoices
+     * @param scheduling The scheduling settings
      */
-    private Pair<Purchaser, Integer> selectPurchaser(List<Purchaser> eligiblePurchasers, Creditor creditor, int financingTermInDays) {
-        // Find the eligible Purchaser with the minimum financing rate for the given Creditor
-        return eligiblePurchasers.stream()
-                .map(purchaser -> {
-                    PurchaserFinancingSettings settings = purchaser.getPurchaserFinancingSettings().stream()
-                            .filter(e -> Objects.equals(e.getCreditor(), creditor))
-                            .findFirst()
-                            .orElseThrow(() -> new InvoiceException("Creditor " + creditor.getName() + " doesn't exist for Purchaser: " + purchaser.getName()));
-
-                    // Calculate the financing rate in basis points (bps)
-                    int financingRateInBps = (settings.getAnnualRateInBps() * financingTermInDays) / 360;
-
-                    // Return a Pair of Purchaser and their financing rate
-                    return Pair.of(purchaser, financingRateInBps);
-                })
-                // Find the Purchaser with the minimum financing rate
-                .min(Comparator.comparingInt(Pair::getSecond))
-                // we don't expect to throw this exception since the eligible purchasers list given here is not empty
-                .orElseThrow(() -> new InvoiceException("No eligible Purchaser found for Creditor: " + creditor.getName()));
+    private void reportDeferredInvoices(FinancingRunContext context, PendingInvoiceCursor cursor, FinancingProperties.Scheduling scheduling) {
+        long deferred = cursor.countRemaining();
+        LocalDate earliestMaturityDate = cursor.findEarliestRemainingMaturityDate().orElse(null);
+        context.getProgress().setDeferredInvoices(deferred);
+        context.getProgress().setEarliestDeferredMaturityDate(earliestMaturityDate);
+        log.warn("Time budget of {} spent, {} PENDING invoices deferred to the next run, the earliest maturing on {}",
+                scheduling.getTimeBudget(), deferred, earliestMaturityDate);
     }
-
-
 }
@@ -0,0 +1,258 @@
+package lu.crx.financing.services;
+
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingResult;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.journal.DecisionJournal;
+import lu.crx.financing.journal.JournalRecord;
+import lu.crx.financing.model.ExposureDelta;
+import lu.crx.financing.model.FinancingDecision;
+import lu.crx.financing.model.FinancingRunContext;
+import lu.crx.financing.repositories.InvoiceRepository;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Service;
+
+/**
+ * Financing writer persists the financing decisions of a batch of invoices: the financing results of the
+ * financed invoices and the new status of every invoice. When the decision journal is enabled the decisions are
+ * appended to the journal instead, and applied to the database by its background flusher.
+ * <p>
+ * The invoices of the batch still PENDING (or still in the status being re-evaluated) are locked before anything is
+ * written, an invoice processed concurrently by another financing run is skipped, so an invoice is never financed twice.
+ * With the capacity-constrained allocation the funding of the financed invoices is then reserved in the database, an
+ * invoice whose funding was spent by another run meanwhile is left PENDING. The decisions going to the journal are
+ * reserved by the journal applier instead, along with the invoices they apply to.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class FinancingWriter {
+
+    private final EntityManager entityManager;
+    private final InvoiceRepository invoiceRepository;
+    private final DecisionJournal decisionJournal;
+    private final ExposureService exposureService;
+    private final FinancingProperties financingProperties;
+
+    /**
+     * Method that persists the given decisions in a single transaction
+     *
+     * @param decisions The invoices paired with their financing decision
+     * @param context   The financing run context
+     */
+    @Transactional
+    public void write(List<Pair<Invoice, FinancingDecision>> decisions, FinancingRunContext context) {
+        write(decisions, context, InvoiceStatus.PENDING);
+    }
+
+    /**
+     * Method that persists the given decisions of invoices in the given status in a single transaction, the decisions
+     * of the invoices no longer in this status are skipped
+     *
+     * @param decisions     The invoices paired with their financing decision
+     * @param context       The financing run context
+     * @param currentStatus The status the invoices are expected to be in
+     */
+    @Transactional
+    public void write(List<Pair<Invoice, FinancingDecision>> decisions, FinancingRunContext context, InvoiceStatus currentStatus) {
+        // The journal only carries the decisions of PENDING invoices
+        boolean journalEnabled = financingProperties.getJournal().isEnabled() && currentStatus == InvoiceStatus.PENDING;
+        Map<InvoiceStatus, List<Long>> invoiceIdsByStatus = new EnumMap<>(InvoiceStatus.class);
+        List<JournalRecord> journalRecords = new ArrayList<>(journalEnabled ? decisions.size() : 0);
+        ExposureDelta exposureDelta = new ExposureDelta();
+        // The journal applier only applies the decisions of the invoices still PENDING by itself
+        Set<Long> claimedInvoiceIds = journalEnabled ? Set.of() : claimInvoices(decisions, currentStatus);
+        Set<Long> unfundedInvoiceIds = context.getBudgets() == null || journalEnabled ? Set.of() : reserveFunding(decisions, claimedInvoiceIds, context);
+
+        for (Pair<Invoice, FinancingDecision> pair : decisions) {
+            Invoice invoice = pair.getFirst();
+            FinancingDecision decision = pair.getSecond();
+
+            if (!journalEnabled && !claimedInvoiceIds.contains(invoice.getId())) {
+                log.warn("Invoice: {} is no longer {} or processed by another financing run, skipping it", invoice.getId(), currentStatus);
+                context.getProgress().recordSkipped();
+                if (context.getBudgets() != null && decision.getStatus() == InvoiceStatus.FINANCED) {
+                    // Give the funding reserved for the invoice back to the purchaser
+                    context.getBudgets().release(decision.getPurchaserId(), invoice.getValueInCents() - decision.getFinancingRateInBps());
+                }
+                continue;
+            }
+            if (unfundedInvoiceIds.contains(invoice.getId())) {
+                log.warn("Funding of purchaser: {} was spent by another financing run, invoice: {} is left PENDING", decision.getPurchaserId(), invoice.getId());
+                decision = FinancingDecision.of(InvoiceStatus.PENDING);
+            }
+
+            switch (decision.getStatus()) {
+                case FINANCED -> {
+                    log.info("Selected purchaser: {} with financing rate: {} for invoice: {}", decision.getPurchaserId(), decision.getFinancingRateInBps(), invoice.getId());
+                    // Perform financing, unless the journal takes care of it
+                    if (!journalEnabled) {
+                        performFinancing(invoice, decision, context, exposureDelta);
+                    }
+                }
+                case PENDING -> log.info("No eligible purchaser has funding left for invoice: {}, it stays PENDING", invoice.getId());
+                case NON_FINANCED -> log.info("No eligible purchasers for invoice: {}", invoice.getId());
+                case CANCELED -> log.error("Maturity date: {} for invoice: {} is before the current date: {}. Marking invoice as canceled.", invoice.getMaturityDate(), invoice.getId(), context.getFinancingDate());
+                case SUSPENDED -> log.error(decision.getReason());
+                default -> throw new IllegalStateException("Unexpected decision status: " + decision.getStatus());
+            }
+            context.getProgress().record(currentStatus, decision.getStatus());
+            if (decision.getStatus() == currentStatus) {
+                // A PENDING invoice left to a later financing date keeps its status
+                continue;
+            }
+            if (journalEnabled) {
+                journalRecords.add(toJournalRecord(invoice, decision, context));
+            } else {
+                invoiceIdsByStatus.computeIfAbsent(decision.getStatus(), status -> new ArrayList<>()).add(invoice.getId());
+            }
+        }
+
+        if (journalEnabled) {
+            decisionJournal.append(journalRecords);
+        } else {
+            // Update the invoice statuses with one statement per status
+            invoiceIdsByStatus.forEach((status, invoiceIds) -> invoiceRepository.updateInvoiceStatus(invoiceIds, status.getDescription()));
+            exposureService.apply(exposureDelta);
+        }
+        log.info("Finished processing for {} invoices", decisions.size());
+        context.getProgress().recordBatch();
+
+        if (!decisions.isEmpty() && context.markInvoiceProcessed()) {
+            // Time-to-first-invoice includes the JVM and the application context startup, tracked for startup regressions
+            long timeToFirstInvoice = ManagementFactory.getRuntimeMXBean().getUptime();
+            context.getProgress().setTimeToFirstInvoiceMillis(timeToFirstInvoice);
+            log.info("Time to first invoice: {} millis since JVM start", timeToFirstInvoice);
+        }
+    }
+
+    /**
+     * Method that locks the invoices of the given decisions which are still in the given status
+     *
+     * @param decisions     The invoices paired with their financing decision
+     * @param currentStatus The status the invoices are expected to be in
+     * @return The ids of the locked invoices
+     */
+    private Set<Long> claimInvoices(List<Pair<Invoice, FinancingDecision>> decisions, InvoiceStatus currentStatus) {
+        if (decisions.isEmpty()) {
+            return Set.of();
+        }
+        List<Long> invoiceIds = decisions.stream().map(pair -> pair.getFirst().getId()).toList();
+        return new HashSet<>(invoiceRepository.lockInvoicesWithStatus(invoiceIds, currentStatus.getDescription()));
+    }
+
+    /**
+     * Method that reserves in the database the funding of the financed invoices of the batch, one reservation per
+     * purchaser. When another run spent part of the funding of a purchaser meanwhile, its invoices are reserved one by
+     * one until the funding is used up.
+     *
+     * @param decisions         The invoices paired with their financing decision
+     * @param claimedInvoiceIds The ids of the invoices claimed by this run
+     * @param context           The financing run context
+     * @return The ids of the financed invoices whose funding could not be reserved
+     */
+    private Set<Long> reserveFunding(List<Pair<Invoice, FinancingDecision>> decisions, Set<Long> claimedInvoiceIds, FinancingRunContext context) {
+        // The purchasers are reserved in id order, overlapping runs lock their funding rows in the same order
+        Map<Long, List<Pair<Invoice, FinancingDecision>>> financedByPurchaser = new TreeMap<>();
+        for (Pair<Invoice, FinancingDecision> pair : decisions) {
+            if (pair.getSecond().getStatus() == InvoiceStatus.FINANCED && claimedInvoiceIds.contains(pair.getFirst().getId())) {
+                financedByPurchaser.computeIfAbsent(pair.getSecond().getPurchaserId(), purchaserId -> new ArrayList<>()).add(pair);
+            }
+        }
+
+        Set<Long> unfundedInvoiceIds = new HashSet<>();
+        financedByPurchaser.forEach((purchaserId, financed) -> {
+            long amountInCents = financed.stream().mapToLong(FinancingWriter::earlyPaymentAmount).sum();
+            if (exposureService.reserveFunding(purchaserId, context.getFinancingDate(), amountInCents)) {
+                return;
+            }
+            context.getBudgets().exhaust(purchaserId);
+            for (Pair<Invoice, FinancingDecision> pair : financed) {
+                if (!exposureService.reserveFunding(purchaserId, context.getFinancingDate(), earlyPaymentAmount(pair))) {
+                    unfundedInvoiceIds.add(pair.getFirst().getId());
+                }
+            }
+        });
+        return unfundedInvoiceIds;
+    }
+
+    /**
+     * Method that calculates the early payment amount of a FINANCED decision, the funding it takes from the purchaser
+     * @param pair The invoice paired with its financing decision
+     * @return The early payment amount in cents
+     */
+    private static long earlyPaymentAmount(Pair<Invoice, FinancingDecision> pair) {
+        return pair.getFirst().getValueInCents() - pair.getSecond().getFinancingRateInBps();
+    }
+
+    /**
+     * Method that performs financing results and updates the DB.
+     * @param invoice The invoice that is about financing check
+     * @param decision The financing decision with the selected purchaser and his rate
+     * @param context The financing run context
+     * @param exposureDelta The exposure of the batch
+     */
+    private void performFinancing(Invoice invoice, FinancingDecision decision, FinancingRunContext context, ExposureDelta exposureDelta) {
+        int financingRate = decision.getFinancingRateInBps();
+
+        // Calculate the early payment amount
+        long earlyPaymentAmount = invoice.getValueInCents() - financingRate;
+
+        FinancingResult financingResult = FinancingResult.builder()
+                .invoiceId(invoice.getId())
+                .initialAmount(invoice.getValueInCents())
+                .earlyPaymentAmount(earlyPaymentAmount)
+                .financingDate(context.getFinancingDate())
+                .createdAt(context.getStartedAt())
+                .financingRate(financingRate)
+                // The purchaser is only referenced by the financing result, it is never loaded
+                .purchaser(entityManager.getReference(Purchaser.class, decision.getPurchaserId()))
+                .settingsVersion(decision.getSettingsVersion())
+                .build();
+
+        // The financing result is always new, persisting it avoids the select issued by a merge
+        entityManager.persist(financingResult);
+        exposureDelta.add(decision.getPurchaserId(), invoice.getCreditor().getId(), invoice.getMaturityDate(),
+                context.getFinancingDate(), invoice.getValueInCents(), earlyPaymentAmount);
+    }
+
+    /**
+     * Method that converts the given decision to its journal form
+     * @param invoice The invoice that is about financing check
+     * @param decision The financing decision
+     * @param context The financing run context
+     * @return The journal record
+     */
+    private JournalRecord toJournalRecord(Invoice invoice, FinancingDecision decision, FinancingRunContext context) {
+        boolean financed = decision.getStatus() == InvoiceStatus.FINANCED;
+        int financingRate = decision.getFinancingRateInBps();
+
+        return JournalRecord.builder()
+                .invoiceId(invoice.getId())
+                .creditorId(invoice.getCreditor().getId())
+                .maturityDate(invoice.getMaturityDate())
+                .statusId(decision.getStatus().getId())
+                .purchaserId(financed ? decision.getPurchaserId() : 0)
+                .financingRate(financingRate)
+                .initialAmount(financed ? invoice.getValueInCents() : 0)
+                .earlyPaymentAmount(financed ? invoice.getValueInCents() - financingRate : 0)
+                .financingDate(context.getFinancingDate())
+                .createdAt(context.getStartedAt())
+                .settingsVersion(decision.getSettingsVersion())
+                .build();
+    }
+}
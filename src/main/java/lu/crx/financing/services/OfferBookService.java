@@ -0,0 +1,135 @@
+package lu.crx.financing.services;
+
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+import lu.crx.financing.entities.SettingsVersion;
+import lu.crx.financing.model.SettingsChangedEvent;
+import lu.crx.financing.offerbook.OfferBook;
+import lu.crx.financing.repositories.CreditorRepository;
+import lu.crx.financing.repositories.PurchaserRepository;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Offer book service provides the {@link OfferBook} of the current settings. The snapshot file is rebuilt once the
+ * settings changes are committed, so a financing run usually only reads the settings version and maps the file.
+ * <p>
+ * The offer book is immutable, publishing a new one is a single reference swap: the running financing runs read the
+ * current one before every batch without locking and move to the new settings from their next batch on.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OfferBookService {
+
+    private final SettingsVersionService settingsVersionService;
+    private final SettingsIntegrityService settingsIntegrityService;
+    private final PurchaserRepository purchaserRepository;
+    private final CreditorRepository creditorRepository;
+    private final EntityManager entityManager;
+    private final FinancingProperties financingProperties;
+
+    /**
+     * The offer book of the latest settings version seen by this instance.
+     */
+    private final AtomicReference<OfferBook> current = new AtomicReference<>();
+
+    /**
+     * Method that returns the offer book of the current settings: the mapped one while up-to-date, otherwise the
+     * snapshot file when built from the current settings version, otherwise a freshly built snapshot
+     *
+     * @return The offer book
+     */
+    public synchronized OfferBook getOfferBook() {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            // The pending settings changes of the current transaction are read from a bumped version
+            entityManager.flush();
+            settingsVersionService.bumpPendingVersion();
+        }
+        SettingsVersion settingsVersion = settingsVersionService.getCurrentVersion();
+        OfferBook offerBook = current.get();
+        if (offerBook != null && offerBook.isBuiltFrom(settingsVersion)) {
+            return offerBook;
+        }
+
+        Path file = Paths.get(financingProperties.getOfferBook().getFile());
+        OfferBook snapshot = OfferBook.open(file);
+        if (snapshot != null && snapshot.isBuiltFrom(settingsVersion)) {
+            log.info("Mapped offer book: {} of settings version: {}", file, settingsVersion.getVersion());
+        } else {
+            long start = System.currentTimeMillis();
+            snapshot = build(settingsVersion, file);
+            log.info("Built offer book: {} of settings version: {} with {} creditors and {} offers in {} millis",
+                    file, settingsVersion.getVersion(), snapshot.getCreditorCount(), snapshot.getOfferCount(), System.currentTimeMillis() - start);
+        }
+        current.set(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Method that returns the latest published offer book without checking the settings version, it only blocks
+     * when no offer book was published yet
+     *
+     * @return The offer book
+     */
+    public OfferBook getCurrentOfferBook() {
+        OfferBook offerBook = current.get();
+        return offerBook != null ? offerBook : getOfferBook();
+    }
+
+    /**
+     * Method that rebuilds and publishes the offer book once the settings changes are committed, the running
+     * financing runs pick it up from their next batch
+     *
+     * @param event The settings change
+     */
+    @TransactionalEventListener
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void onSettingsChanged(SettingsChangedEvent event) {
+        getOfferBook();
+    }
+
+    /**
+     * Method that builds the offer book out of the settings entities. The version is read before the entities, a
+     * concurrent change makes the snapshot look outdated and rebuilt, never the other way around.
+     *
+     * @param settingsVersion The current settings version
+     * @param file            The offer book file
+     * @return The mapped offer book
+     */
+    private OfferBook build(SettingsVersion settingsVersion, Path file) {
+        Set<Pair<Long, Long>> invalidSettings = settingsIntegrityService.findInvalidPurchaserCreditorPairs();
+
+        List<OfferBook.CreditorSettings> creditors = creditorRepository.findAll().stream()
+                .map(creditor -> new OfferBook.CreditorSettings(creditor.getId(), creditor.getMaxFinancingRateInBps()))
+                .toList();
+
+        List<OfferBook.Offer> offers = new ArrayList<>();
+        for (Purchaser purchaser : purchaserRepository.findAllWithSettings()) {
+            Set<Long> creditorIds = new HashSet<>();
+            for (PurchaserFinancingSettings settings : purchaser.getPurchaserFinancingSettings()) {
+                long creditorId = settings.getCreditor().getId();
+                // A purchaser with several settings for the same creditor gets a single offer, flagged invalid
+                if (creditorIds.add(creditorId)) {
+                    offers.add(new OfferBook.Offer(creditorId, purchaser.getId(), purchaser.getMinimumFinancingTermInDays(),
+                            settings.getAnnualRateInBps(), invalidSettings.contains(Pair.of(purchaser.getId(), creditorId))));
+                }
+            }
+        }
+        return OfferBook.write(file, settingsVersion, creditors, offers);
+    }
+}
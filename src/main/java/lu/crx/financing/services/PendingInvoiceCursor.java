@@ -0,0 +1,100 @@
+package lu.crx.financing.services;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import lombok.Getter;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.repositories.InvoiceRepository;
+import org.springframework.data.domain.Limit;
+
+/**
+ * Pending invoice cursor reads the PENDING invoices of a financing run batch after batch with keyset pagination, in
+ * id order (through the (status, id) index) or nearest maturity first (through the (status, maturity date, id)
+ * index). Once the time budget of the run is spent it returns no more batches, the run stops at the next batch
+ * boundary and the invoices left are deferred to the next run.
+ * <p>
+ * It is used by a single thread, the sequential loop or the reader stage of the pipeline.
+ */
+class PendingInvoiceCursor {
+
+    /**
+     * The keyset before the first maturity date.
+     */
+    private static final LocalDate FIRST_MATURITY_DATE = LocalDate.of(1, 1, 1);
+
+    private final InvoiceRepository invoiceRepository;
+
+    private final boolean maturityFirst;
+
+    private final boolean timeBudgeted;
+
+    private final long deadlineNanos;
+
+    private LocalDate lastMaturityDate = FIRST_MATURITY_DATE;
+
+    private long lastId;
+
+    /**
+     * Whether the time budget ran out before all the PENDING invoices were read.
+     */
+    @Getter
+    private volatile boolean expired;
+
+    PendingInvoiceCursor(InvoiceRepository invoiceRepository, boolean maturityFirst, Duration timeBudget, long startNanos) {
+        this.invoiceRepository = invoiceRepository;
+        this.maturityFirst = maturityFirst;
+        this.timeBudgeted = timeBudget != null && !timeBudget.isZero() && !timeBudget.isNegative();
+        this.deadlineNanos = timeBudgeted ? startNanos + timeBudget.toNanos() : 0;
+    }
+
+    /**
+     * Method that reads the next batch of PENDING invoices
+     *
+     * @param batchSize The maximum number of invoices
+     * @return The invoices, empty when there are no more or the time budget is spent
+     */
+    List<Invoice> next(int batchSize) {
+        if (timeBudgeted && System.nanoTime() - deadlineNanos >= 0) {
+            expired = true;
+            return List.of();
+        }
+        String pending = InvoiceStatus.PENDING.getDescription();
+        List<Invoice> invoices = maturityFirst
+                ? invoiceRepository.findAllByInvoiceStatusAfterMaturityDateAndId(pending, lastMaturityDate, lastId, Limit.of(batchSize))
+                : invoiceRepository.findAllByInvoiceStatusAndIdGreaterThanOrderById(pending, lastId, Limit.of(batchSize));
+        if (!invoices.isEmpty()) {
+            Invoice last = invoices.get(invoices.size() - 1);
+            lastMaturityDate = last.getMaturityDate();
+            lastId = last.getId();
+        }
+        return invoices;
+    }
+
+    /**
+     * Method that counts the PENDING invoices not read yet
+     *
+     * @return The number of invoices left
+     */
+    long countRemaining() {
+        String pending = InvoiceStatus.PENDING.getDescription();
+        return maturityFirst
+                ? invoiceRepository.countByInvoiceStatusAfterMaturityDateAndId(pending, lastMaturityDate, lastId)
+                : invoiceRepository.countByInvoiceStatusAndIdGreaterThan(pending, lastId);
+    }
+
+    /**
+     * Method that finds the earliest maturity date of the PENDING invoices not read yet
+     *
+     * @return The earliest maturity date, empty when no invoice is left
+     */
+    Optional<LocalDate> findEarliestRemainingMaturityDate() {
+        String pending = InvoiceStatus.PENDING.getDescription();
+        List<Invoice> first = maturityFirst
+                ? invoiceRepository.findAllByInvoiceStatusAfterMaturityDateAndId(pending, lastMaturityDate, lastId, Limit.of(1))
+                : invoiceRepository.findFirstByInvoiceStatusAndIdGreaterThanOrderByMaturityDateAscIdAsc(pending, lastId).stream().toList();
+        return first.stream().findFirst().map(Invoice::getMaturityDate);
+    }
+}
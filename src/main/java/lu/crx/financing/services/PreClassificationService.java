@@ -0,0 +1,118 @@
+package lu.crx.financing.services;
+
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.model.FinancingRunContext;
+import lu.crx.financing.offerbook.OfferBook;
+import lu.crx.financing.utils.EligibilityCheckUtils;
+import org.springframework.data.util.Pair;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Pre-classification service settles the PENDING invoices whose outcome does not depend on the purchasers before
+ * they are decided one by one: the invoices past their maturity are CANCELED, and the invoices whose term is outside
+ * the feasible term range of their creditor are NON_FINANCED. Both are set-based updates per creditor, served by the
+ * (creditor, status, maturity date) index and sent as two JDBC batches, so a creditor nobody can finance costs two
+ * statements whatever its number of invoices.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class PreClassificationService {
+
+    private static final String CANCEL_MATURED =
+            "UPDATE invoice SET invoice_status = ? WHERE creditor_id = ? AND invoice_status = ? AND maturity_date <= ?";
+
+    private static final String NON_FINANCE_ALL =
+            "UPDATE invoice SET invoice_status = ? WHERE creditor_id = ? AND invoice_status = ? AND maturity_date > ?";
+
+    private static final String NON_FINANCE_OUTSIDE_RANGE =
+            "UPDATE invoice SET invoice_status = ? WHERE creditor_id = ? AND invoice_status = ? AND maturity_date > ? "
+                    + "AND (maturity_date < ? OR maturity_date > ?)";
+
+    /**
+     * The last maturity date of a range open to the future.
+     */
+    private static final LocalDate LAST_MATURITY_DATE = LocalDate.of(9999, 12, 31);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final EligibilityCheckUtils eligibilityCheckUtils;
+
+    /**
+     * Method that settles the PENDING invoices of the creditors of the offer book of the run which cannot be financed.
+     * The settlement commits in a transaction of its own, so the pipeline stages reading and writing the pending
+     * invoices on other connections no longer see the settled invoices as PENDING.
+     *
+     * @param context The financing run context
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void settle(FinancingRunContext context) {
+        long start = System.currentTimeMillis();
+        OfferBook offerBook = context.getOfferBook();
+        LocalDate financingDate = context.getFinancingDate();
+        String pending = InvoiceStatus.PENDING.getDescription();
+
+        List<Object[]> cancellations = new ArrayList<>();
+        List<Object[]> nonFinancedAll = new ArrayList<>();
+        List<Object[]> nonFinancedOutsideRange = new ArrayList<>();
+        for (OfferBook.CreditorSettings creditor : offerBook.getCreditors()) {
+            cancellations.add(new Object[]{InvoiceStatus.CANCELED.getDescription(), creditor.getCreditorId(), pending, Date.valueOf(financingDate)});
+
+            Pair<Integer, Integer> termRange = eligibilityCheckUtils.getFeasibleTermRange(offerBook.getOffers(creditor.getCreditorId()),
+                    creditor.getMaxFinancingRateInBps());
+            if (termRange == null) {
+                nonFinancedAll.add(new Object[]{InvoiceStatus.NON_FINANCED.getDescription(), creditor.getCreditorId(), pending,
+                        Date.valueOf(financingDate)});
+            } else {
+                nonFinancedOutsideRange.add(new Object[]{InvoiceStatus.NON_FINANCED.getDescription(), creditor.getCreditorId(), pending,
+                        Date.valueOf(financingDate), Date.valueOf(financingDate.plusDays(termRange.getFirst())),
+                        Date.valueOf(lastMaturityDate(financingDate, termRange.getSecond()))});
+            }
+        }
+
+        // Like the bulk updates of the repositories, the pending changes are flushed and the stale invoices evicted
+        entityManager.flush();
+        long canceled = update(CANCEL_MATURED, cancellations);
+        long nonFinanced = update(NON_FINANCE_ALL, nonFinancedAll) + update(NON_FINANCE_OUTSIDE_RANGE, nonFinancedOutsideRange);
+        entityManager.clear();
+        context.getProgress().record(InvoiceStatus.PENDING, InvoiceStatus.CANCELED, canceled);
+        context.getProgress().record(InvoiceStatus.PENDING, InvoiceStatus.NON_FINANCED, nonFinanced);
+        log.info("Pre-classified the PENDING invoices of {} creditors ({} without feasible term) in {} millis: {} CANCELED, {} NON_FINANCED",
+                cancellations.size(), nonFinancedAll.size(), System.currentTimeMillis() - start, canceled, nonFinanced);
+    }
+
+    /**
+     * Method that calculates the last maturity date of a feasible term range
+     *
+     * @param financingDate The financing date
+     * @param lastTerm      The last term of the range
+     * @return The maturity date of the last term, at most {@link #LAST_MATURITY_DATE}
+     */
+    private LocalDate lastMaturityDate(LocalDate financingDate, int lastTerm) {
+        return lastTerm >= LAST_MATURITY_DATE.toEpochDay() - financingDate.toEpochDay() ? LAST_MATURITY_DATE : financingDate.plusDays(lastTerm);
+    }
+
+    /**
+     * Method that executes the given update once per arguments in a JDBC batch
+     *
+     * @param sql       The update
+     * @param arguments The arguments of every execution
+     * @return The number of updated invoices
+     */
+    private long update(String sql, List<Object[]> arguments) {
+        if (arguments.isEmpty()) {
+            return 0;
+        }
+        return Arrays.stream(jdbcTemplate.batchUpdate(sql, arguments)).asLongStream().sum();
+    }
+}
@@ -0,0 +1,123 @@
+package lu.crx.financing.services;
+
+import jakarta.transaction.Transactional;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.model.FinancingDecision;
+import lu.crx.financing.model.FinancingRunContext;
+import lu.crx.financing.model.SettingsChangedEvent;
+import lu.crx.financing.repositories.InvoiceRepository;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.util.Pair;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Reevaluation service decides again the NON_FINANCED invoices of the creditors whose financing settings changed.
+ * The creditors are queued before the transaction changing their financing settings commits, and their invoices are
+ * found through the (creditor, status, maturity date) index, so a reevaluation costs the backlog of the queued
+ * creditors, not the invoice table.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class ReevaluationService {
+
+    private static final String QUEUE_CREDITOR =
+            "MERGE INTO creditor_reevaluation r USING (SELECT CAST(? AS BIGINT) AS creditor_id, v.version FROM settings_version v) c "
+                    + "ON r.creditor_id = c.creditor_id "
+                    + "WHEN MATCHED THEN UPDATE SET r.settings_version = c.version "
+                    + "WHEN NOT MATCHED THEN INSERT (creditor_id, settings_version, queued_at) VALUES (c.creditor_id, c.version, LOCALTIMESTAMP)";
+
+    private static final String QUEUE_PURCHASER_CREDITORS =
+            "MERGE INTO creditor_reevaluation r USING (SELECT DISTINCT ps.creditor_id, v.version FROM purchaser_purchaser_financing_settings pps "
+                    + "JOIN purchaser_financing_settings ps ON ps.id = pps.purchaser_financing_settings_id CROSS JOIN settings_version v "
+                    + "WHERE pps.purchaser_id = ?) c "
+                    + "ON r.creditor_id = c.creditor_id "
+                    + "WHEN MATCHED THEN UPDATE SET r.settings_version = c.version "
+                    + "WHEN NOT MATCHED THEN INSERT (creditor_id, settings_version, queued_at) VALUES (c.creditor_id, c.version, LOCALTIMESTAMP)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final InvoiceRepository invoiceRepository;
+    private final FinancingDecisionService financingDecisionService;
+    private final FinancingWriter financingWriter;
+    private final FinancingProperties financingProperties;
+
+    /**
+     * Method that queues the creditors affected by the given settings change before its transaction commits, after
+     * the settings version was bumped. The changes which cannot change a decision queue nothing.
+     *
+     * @param event The settings change
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    public void onSettingsChanged(SettingsChangedEvent event) {
+        if (!event.isFinancingChange()) {
+            return;
+        }
+        // The queue entry carries the bumped settings version
+        if (event.getEntity() instanceof PurchaserFinancingSettings settings) {
+            jdbcTemplate.update(QUEUE_CREDITOR, settings.getCreditor().getId());
+        } else if (event.getEntity() instanceof Creditor creditor) {
+            jdbcTemplate.update(QUEUE_CREDITOR, creditor.getId());
+        } else if (event.getEntity() instanceof Purchaser purchaser) {
+            // Read the creditors of the purchaser in SQL, the flushed rows are the ones committed
+            jdbcTemplate.update(QUEUE_PURCHASER_CREDITORS, purchaser.getId());
+        }
+    }
+
+    /**
+     * Method that decides again the still maturing NON_FINANCED invoices of the queued creditors. Only the invoices
+     * financed now change status. An invoice no eligible purchaser has funding left for goes back to PENDING. The
+     * creditors queued by a change not visible in the offer book of the run stay queued for the next run.
+     * <p>
+     * The reevaluation commits in a transaction of its own, so the exposure rows it updates are not held locked
+     * while the pipeline writers finance the pending invoices.
+     *
+     * @param context The financing run context
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void reevaluate(FinancingRunContext context) {
+        long settingsVersion = context.getOfferBook().getVersion();
+        List<Long> creditorIds = jdbcTemplate.queryForList(
+                "SELECT creditor_id FROM creditor_reevaluation WHERE settings_version <= ? ORDER BY creditor_id FOR UPDATE SKIP LOCKED",
+                Long.class, settingsVersion);
+
+        int batchSize = financingProperties.getReevaluation().getBatchSize();
+        for (Long creditorId : creditorIds) {
+            int reevaluated = 0;
+            int financed = 0;
+            long lastId = 0;
+            while (true) {
+                List<Invoice> invoices = invoiceRepository.findAllByCreditorIdAndInvoiceStatusAndMaturityDateAfterAndIdGreaterThanOrderById(
+                        creditorId, InvoiceStatus.NON_FINANCED.getDescription(), context.getFinancingDate(), lastId, Limit.of(batchSize));
+                if (invoices.isEmpty()) {
+                    break;
+                }
+                lastId = invoices.get(invoices.size() - 1).getId();
+
+                // The invoices eligible now but beyond the funding left to the purchasers go back to PENDING
+                List<Pair<Invoice, FinancingDecision>> changedDecisions = financingDecisionService.decide(invoices, context).stream()
+                        .filter(pair -> pair.getSecond().getStatus() == InvoiceStatus.FINANCED
+                                || pair.getSecond().getStatus() == InvoiceStatus.PENDING)
+                        .toList();
+                financingWriter.write(changedDecisions, context, InvoiceStatus.NON_FINANCED);
+                reevaluated += invoices.size();
+                financed += (int) changedDecisions.stream().filter(pair -> pair.getSecond().getStatus() == InvoiceStatus.FINANCED).count();
+            }
+            jdbcTemplate.update("DELETE FROM creditor_reevaluation WHERE creditor_id = ? AND settings_version <= ?", creditorId, settingsVersion);
+            log.info("Reevaluated {} NON_FINANCED invoices of creditor: {}, {} financed", reevaluated, creditorId, financed);
+        }
+    }
+}
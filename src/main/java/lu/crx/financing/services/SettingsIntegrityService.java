@@ -0,0 +1,36 @@
+package lu.crx.financing.services;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.repositories.PurchaserRepository;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Service;
+
+@Slf4j
+@Service
+@AllArgsConstructor
+public class SettingsIntegrityService {
+
+    private final PurchaserRepository purchaserRepository;
+
+    /**
+     * Method that validates the purchaser financing settings once per financing run. A purchaser is expected to have
+     * a single settings entry per creditor, every (purchaser, creditor) pair violating this rule is returned.
+     *
+     * @return The set of invalid (purchaser id, creditor id) pairs
+     */
+    public Set<Pair<Long, Long>> findInvalidPurchaserCreditorPairs() {
+        List<Object[]> duplicates = purchaserRepository.findDuplicateCreditorSettings();
+        Set<Pair<Long, Long>> invalidPairs = new HashSet<>(duplicates.size());
+
+        for (Object[] duplicate : duplicates) {
+            Pair<Long, Long> pair = Pair.of((Long) duplicate[0], (Long) duplicate[1]);
+            log.warn("Multiple financing settings found for purchaser: {} and creditor: {}", pair.getFirst(), pair.getSecond());
+            invalidPairs.add(pair);
+        }
+        return invalidPairs;
+    }
+}
@@ -0,0 +1,108 @@
+package lu.crx.financing.services;
+
+import java.util.List;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lu.crx.financing.entities.SettingsVersion;
+import lu.crx.financing.model.SettingsChangedEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Settings version service maintains the {@link SettingsVersion} stamp of the purchaser and creditor settings.
+ * <p>
+ * A settings change is only recorded in the modifying transaction, the version is bumped once before the transaction
+ * commits. It is never written from the flush that reports the change.
+ */
+@Service
+@AllArgsConstructor
+public class SettingsVersionService {
+
+    private static final String BUMP_VERSION =
+            "MERGE INTO settings_version s USING (VALUES (CAST(? AS BIGINT))) v (id) ON s.id = v.id "
+                    + "WHEN MATCHED THEN UPDATE SET s.version = s.version + 1 "
+                    + "WHEN NOT MATCHED THEN INSERT (id, epoch, version) VALUES (v.id, RANDOM_UUID(), 1)";
+
+    /**
+     * The version of a database without any settings row yet.
+     */
+    private static final SettingsVersion INITIAL_VERSION = new SettingsVersion(SettingsVersion.ID, new UUID(0, 0), 0);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    /**
+     * Method that records a settings change which may change the financing decisions, for the bulk updates of the
+     * settings
+     *
+     * @param entity The modified entity
+     */
+    public void settingsChanged(Object entity) {
+        settingsChanged(entity, true);
+    }
+
+    /**
+     * Method that records a settings change in the current transaction and publishes it, the version is bumped
+     * before the transaction commits. Within a transaction it runs no statement, so it may be called from a flush.
+     *
+     * @param entity          The modified entity
+     * @param financingChange Whether a property read by the financing decisions changed
+     */
+    public void settingsChanged(Object entity, boolean financingChange) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // A change outside a transaction is already committed
+            jdbcTemplate.update(BUMP_VERSION, SettingsVersion.ID);
+        } else if (!TransactionSynchronizationManager.hasResource(this)) {
+            TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(SettingsVersionService.this);
+                }
+            });
+        }
+        applicationEventPublisher.publishEvent(new SettingsChangedEvent(entity, financingChange));
+    }
+
+    /**
+     * Method that bumps the settings version before the transaction changing the settings commits, ahead of the
+     * other listeners of the change
+     *
+     * @param event The settings change
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onSettingsChanged(SettingsChangedEvent event) {
+        bumpPendingVersion();
+    }
+
+    /**
+     * Method that bumps the settings version when the current transaction changed the settings since the last bump,
+     * so that the transaction reads its own changes. It must not be called from a flush.
+     */
+    public void bumpPendingVersion() {
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            TransactionSynchronizationManager.unbindResource(this);
+            jdbcTemplate.update(BUMP_VERSION, SettingsVersion.ID);
+        }
+    }
+
+    /**
+     * Method that reads the current settings version
+     *
+     * @return The settings version
+     */
+    public SettingsVersion getCurrentVersion() {
+        List<SettingsVersion> versions = jdbcTemplate.query("SELECT id, epoch, version FROM settings_version WHERE id = ?",
+                (rs, rowNum) -> new SettingsVersion(rs.getLong("id"), rs.getObject("epoch", UUID.class), rs.getLong("version")),
+                SettingsVersion.ID);
+        return versions.isEmpty() ? INITIAL_VERSION : versions.get(0);
+    }
+}
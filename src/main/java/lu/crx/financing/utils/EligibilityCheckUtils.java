@@ -1,87 +1,110 @@
 package lu.crx.financing.utils;
 
 import java.util.List;
-import java.util.Objects;
 import lu.crx.financing.entities.Creditor;
-import lu.crx.financing.entities.Purchaser;
-import lu.crx.financing.entities.PurchaserFinancingSettings;
 import lu.crx.financing.exception.InvoiceException;
+import lu.crx.financing.offerbook.OfferBook;
+import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Service;
 
 @Service
 public class EligibilityCheckUtils {
 
     /**
-     * Method tha calculate the eligible purchasers based on the given purchasers, creditor and financing term
+     * Method tha calculate the eligible offers based on the given offers, creditor and financing term
      *
-     * @param purchasers          The purchasers related to the given creditor
-     * @param creditor            The creditor that needs financing check
-     * @param financingTermInDays The calculated financing term
-     * @return The eligible purchasers
+     * @param offers                The offers of the purchasers for the given creditor
+     * @param creditor              The creditor that needs financing check
+     * @param maxFinancingRateInBps The maximum financing rate of the creditor
+     * @param financingTermInDays   The calculated financing term
+     * @return The eligible offers
      */
-    public List<Purchaser> getEligiblePurchasers(List<Purchaser> purchasers, Creditor creditor, int financingTermInDays) {
-        return purchasers.stream()
-                // Filter Purchasers who have financing settings for the given Creditor
-                .filter(purchaser -> hasFinancingSettingsForCreditor(purchaser, creditor))
+    public List<OfferBook.Offer> getEligibleOffers(List<OfferBook.Offer> offers, Creditor creditor, int maxFinancingRateInBps,
+                                                   int financingTermInDays) {
+        return offers.stream()
                 // Check if the Purchaser meets the minimum financing term requirement
-                .filter(purchaser -> meetsMinimumFinancingTerm(purchaser, financingTermInDays))
+                .filter(offer -> meetsMinimumFinancingTerm(offer, financingTermInDays))
+                // Ensure the Purchaser's settings for the given Creditor passed the integrity check
+                .filter(offer -> hasConsistentSettings(offer, creditor))
                 // Check if the Purchaser's financing rate does not exceed the Creditor's max rate
-                .filter(purchaser -> hasValidFinancingRate(purchaser, creditor, financingTermInDays))
+                .filter(offer -> hasValidFinancingRate(offer, maxFinancingRateInBps, financingTermInDays))
                 .toList();
     }
 
     /**
-     * Method that checks if the given purchaser has settings for the given creditor
+     * Method that calculates the range of financing terms in which at least one of the given offers is eligible, or
+     * makes the invoice SUSPENDED. Outside this range every invoice of the creditor is NON_FINANCED.
+     * <p>
+     * The financing rate of an offer grows with the term: it is positive from 360 / annual rate days on and stays
+     * within the maximum rate of the creditor up to (maximum rate + 1) * 360 / annual rate days (exclusive). An offer
+     * with inconsistent settings suspends the invoices from the minimum term of its purchaser on, whatever the rate.
      *
-     * @param purchaser The purchaser
-     * @param creditor  The creditor
-     * @return true if purchaser has settings for the creditor, otherwise returns false
+     * @param offers                The offers of the purchasers for a creditor
+     * @param maxFinancingRateInBps The maximum financing rate of the creditor
+     * @return The first and last term of the range, the offers may leave gaps within it, null when no term is feasible
      */
-    private boolean hasFinancingSettingsForCreditor(Purchaser purchaser, Creditor creditor) {
-        return purchaser.getPurchaserFinancingSettings().stream()
-                .anyMatch(setting -> Objects.equals(setting.getCreditor(), creditor));
+    public Pair<Integer, Integer> getFeasibleTermRange(List<OfferBook.Offer> offers, int maxFinancingRateInBps) {
+        int firstTerm = Integer.MAX_VALUE;
+        int lastTerm = Integer.MIN_VALUE;
+        for (OfferBook.Offer offer : offers) {
+            int offerFirstTerm = Math.max(1, offer.getMinimumFinancingTermInDays());
+            int offerLastTerm;
+            if (offer.isInvalid()) {
+                offerLastTerm = Integer.MAX_VALUE;
+            } else if (offer.getAnnualRateInBps() <= 0 || maxFinancingRateInBps <= 0) {
+                continue;
+            } else {
+                int annualRateInBps = offer.getAnnualRateInBps();
+                offerFirstTerm = Math.max(offerFirstTerm, (360 + annualRateInBps - 1) / annualRateInBps);
+                offerLastTerm = (int) Math.min(Integer.MAX_VALUE, (360L * (maxFinancingRateInBps + 1) - 1) / annualRateInBps);
+            }
+            if (offerFirstTerm <= offerLastTerm) {
+                firstTerm = Math.min(firstTerm, offerFirstTerm);
+                lastTerm = Math.max(lastTerm, offerLastTerm);
+            }
+        }
+        return firstTerm <= lastTerm ? Pair.of(firstTerm, lastTerm) : null;
     }
 
     /**
-     * Method that checks if the given purchaser meets minimum financing term
+     * Method that checks if the purchaser of the given offer meets minimum financing term
      *
-     * @param purchaser           The purchaser
+     * @param offer               The offer
      * @param financingTermInDays The calculated financing term
      * @return true if purchaser meets minimum financing term, otherwise returns false
      */
-    private boolean meetsMinimumFinancingTerm(Purchaser purchaser, int financingTermInDays) {
-        return purchaser.getMinimumFinancingTermInDays() <= financingTermInDays;
+    private boolean meetsMinimumFinancingTerm(OfferBook.Offer offer, int financingTermInDays) {
+        return offer.getMinimumFinancingTermInDays() <= financingTermInDays;
     }
 
     /**
-     * Method that checks if the given purchaser has valid financing rate
+     * Method that checks if the purchaser of the given offer has a single settings entry for the given creditor
      *
-     * @param purchaser           The purchaser
-     * @param creditor            The creditor
-     * @param financingTermInDays The calculated financing term
-     * @return true if purchaser has valid financing rate, otherwise returns false
+     * @param offer    The offer
+     * @param creditor The creditor
+     * @return true if the settings are consistent, otherwise throws an {@link InvoiceException}
      */
-    private boolean hasValidFinancingRate(Purchaser purchaser, Creditor creditor, int financingTermInDays) {
-
-        //filter the purchasers by given creditor
-        List<PurchaserFinancingSettings> settingsForCreditor = purchaser.getPurchaserFinancingSettings().stream()
-                .filter(setting -> Objects.equals(setting.getCreditor(), creditor))
-                .toList();
-
-        if (settingsForCreditor.isEmpty()) {
-            return false;
-        }
-
-        // Ensure only one entry exists for the same creditor
-        if (settingsForCreditor.size() > 1) {
+    private boolean hasConsistentSettings(OfferBook.Offer offer, Creditor creditor) {
+        if (offer.isInvalid()) {
             throw new InvoiceException("Multiple financing settings found for the same creditor: " + creditor.getName());
         }
+        return true;
+    }
+
+    /**
+     * Method that checks if the given offer has valid financing rate
+     *
+     * @param offer                 The offer
+     * @param maxFinancingRateInBps The maximum financing rate of the creditor
+     * @param financingTermInDays   The calculated financing term
+     * @return true if the offer has valid financing rate, otherwise returns false
+     */
+    private boolean hasValidFinancingRate(OfferBook.Offer offer, int maxFinancingRateInBps, int financingTermInDays) {
 
         // Calculate financing rate
-        PurchaserFinancingSettings setting = settingsForCreditor.get(0);
-        int financingRateInBps = (setting.getAnnualRateInBps() * financingTermInDays) / 360;
+        int financingRateInBps = (offer.getAnnualRateInBps() * financingTermInDays) / 360;
 
-        return financingRateInBps > 0 && financingRateInBps <= creditor.getMaxFinancingRateInBps();
+        return financingRateInBps > 0 && financingRateInBps <= maxFinancingRateInBps;
     }
 
 }
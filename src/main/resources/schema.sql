@@ -4,4 +4,9 @@ DROP TABLE IF EXISTS invoice cascade;
 DROP TABLE IF EXISTS purchaser cascade;
 DROP TABLE IF EXISTS purchaser_financing_settings cascade;
 DROP TABLE IF EXISTS purchaser_purchaser_financing_settings cascade;
-DROP TABLE IF EXISTS financing_result cascade;
\ No newline at end of file
+DROP TABLE IF EXISTS financing_result cascade;
+DROP TABLE IF EXISTS financing_exposure cascade;
+DROP TABLE IF EXISTS purchaser_funding cascade;
+DROP TABLE IF EXISTS settings_version cascade;
+DROP TABLE IF EXISTS creditor_reevaluation cascade;
+DROP TABLE IF EXISTS financing_run cascade;
@@ -0,0 +1,129 @@
+package lu.crx.financing.ingestion;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Debtor;
+import lu.crx.financing.repositories.CreditorRepository;
+import lu.crx.financing.repositories.DebtorRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.support.IsolatedDatabaseTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The watcher ingests the dropped files from its own thread, so the tests are not transactional and run on a database
+ * of their own.
+ */
+@IsolatedDatabaseTest(properties = {
+        "financing.ingestion.batch-size=2",
+        "financing.ingestion.drop-directory=target/ingestion-drop-test",
+        "financing.ingestion.poll-interval=50ms"})
+class IngestionDirectoryWatcherTest {
+
+    private static final Path DIRECTORY = Paths.get("target/ingestion-drop-test");
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private CreditorRepository creditorRepository;
+
+    @Autowired
+    private DebtorRepository debtorRepository;
+
+    @BeforeEach
+    void cleanDropDirectory() throws IOException {
+        for (String subDirectory : new String[]{"processed", "failed"}) {
+            try (Stream<Path> files = Files.list(DIRECTORY.resolve(subDirectory))) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testFailedFileInsertsNothingAndCanBeDroppedAgain() throws Exception {
+        long invoices = invoiceRepository.count();
+        String valid = validLines(3);
+
+        // The malformed object comes after a full batch, which an ingestion per batch would have committed
+        drop("partial.ndjson", valid + "[1]\n");
+        awaitFile(DIRECTORY.resolve("failed").resolve("partial.ndjson"));
+        assertEquals(invoices, invoiceRepository.count());
+
+        drop("partial.ndjson", valid);
+        awaitFile(DIRECTORY.resolve("processed").resolve("partial.ndjson"));
+        assertEquals(invoices + 3, invoiceRepository.count());
+    }
+
+    @Test
+    void testPollingGoesOnWhenAFileCannotBeMoved() throws Exception {
+        long invoices = invoiceRepository.count();
+        block("processed");
+        block("failed");
+        try {
+            // Neither the processed nor the failed directory can take the file, it stays in place and nothing is inserted
+            drop("blocked.ndjson", validLines(1));
+            Thread.sleep(300);
+            assertTrue(Files.exists(DIRECTORY.resolve("blocked.ndjson")));
+            assertEquals(invoices, invoiceRepository.count());
+        } finally {
+            unblock("processed");
+            unblock("failed");
+        }
+
+        // The next polls ingest it once
+        awaitFile(DIRECTORY.resolve("processed").resolve("blocked.ndjson"));
+        Thread.sleep(200);
+        assertEquals(invoices + 1, invoiceRepository.count());
+    }
+
+    private String validLines(int count) {
+        Creditor creditor = creditorRepository.findAll().get(0);
+        Debtor debtor = debtorRepository.findAll().get(0);
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append("{\"creditorId\":").append(creditor.getId()).append(",\"debtorId\":").append(debtor.getId())
+                    .append(",\"valueInCents\":").append(100000 + i).append(",\"maturityDate\":\"2030-01-31\"}\n");
+        }
+        return lines.toString();
+    }
+
+    /**
+     * Method that drops a file the way producers must: written under another name, then renamed
+     */
+    private void drop(String name, String content) throws IOException {
+        Path temporary = DIRECTORY.resolve(name + ".part");
+        Files.writeString(temporary, content);
+        Files.move(temporary, DIRECTORY.resolve(name));
+    }
+
+    /**
+     * Method that replaces the given sub-directory with a regular file, so that no file can be moved into it
+     */
+    private void block(String subDirectory) throws IOException {
+        Files.move(DIRECTORY.resolve(subDirectory), DIRECTORY.resolve(subDirectory + "-blocked"));
+        Files.writeString(DIRECTORY.resolve(subDirectory), "");
+    }
+
+    private void unblock(String subDirectory) throws IOException {
+        Files.delete(DIRECTORY.resolve(subDirectory));
+        Files.move(DIRECTORY.resolve(subDirectory + "-blocked"), DIRECTORY.resolve(subDirectory));
+    }
+
+    private void awaitFile(Path file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!Files.exists(file)) {
+            assertTrue(System.currentTimeMillis() < deadline, file + " does not exist");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package lu.crx.financing.ingestion;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Debtor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.enums.IngestionFormat;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.model.IngestionReport;
+import lu.crx.financing.repositories.CreditorRepository;
+import lu.crx.financing.repositories.DebtorRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(locations = "classpath:application-test.properties", properties = "financing.ingestion.batch-size=2")
+@Transactional
+class IngestionServiceTest {
+
+    @Autowired
+    private IngestionService ingestionService;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private CreditorRepository creditorRepository;
+
+    @Autowired
+    private DebtorRepository debtorRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Sql(scripts = "classpath:drop_invoices.sql")
+    @Test
+    void testCsvInvoicesAreIngestedAsPending() throws IOException {
+        Creditor creditor = creditorRepository.findAll().get(0);
+        Debtor debtor = debtorRepository.findAll().get(0);
+        String csv = "creditorId,debtorId,valueInCents,maturityDate\n"
+                + creditor.getId() + "," + debtor.getId() + ",200000,2030-01-31\n"
+                + creditor.getId() + "," + debtor.getId() + ",300000,2030-02-28\n"
+                + "\n"
+                + creditor.getId() + "," + debtor.getId() + ",400000,2030-03-31\n"
+                + "999999," + debtor.getId() + ",500000,2030-03-31\n"
+                + creditor.getId() + "," + debtor.getId() + ",600000,2030-02-30\n"
+                + creditor.getId() + "," + debtor.getId() + ",700000\n";
+
+        IngestionReport report = ingest(csv, IngestionFormat.CSV);
+
+        assertEquals(3, report.getAcceptedInvoices());
+        assertEquals(3, report.getRejectedInvoices());
+        List<Invoice> invoices = invoiceRepository.findAll();
+        assertEquals(3, invoices.size());
+        assertTrue(invoices.stream().allMatch(invoice -> InvoiceStatus.PENDING.getDescription().equals(invoice.getInvoiceStatus())));
+        assertEquals(LocalDate.of(2030, 2, 28), invoices.get(1).getMaturityDate());
+        assertEquals(creditor.getId(), invoices.get(2).getCreditor().getId());
+    }
+
+    @Sql(scripts = "classpath:drop_invoices.sql")
+    @Test
+    void testNdjsonInvoicesShareTheInvoiceSequence() throws IOException {
+        Creditor creditor = creditorRepository.findAll().get(1);
+        Debtor debtor = debtorRepository.findAll().get(1);
+        String ndjson = "{\"creditorId\":" + creditor.getId() + ",\"debtorId\":" + debtor.getId() + ",\"valueInCents\":200000,\"maturityDate\":\"2030-01-31\",\"reference\":{\"number\":\"A-1\"}}\n"
+                + "{\"creditorId\":" + creditor.getId() + ",\"debtorId\":999999,\"valueInCents\":200000,\"maturityDate\":\"2030-01-31\"}\n"
+                + "{\"creditorId\":" + creditor.getId() + ",\"debtorId\":" + debtor.getId() + ",\"valueInCents\":300000}\n";
+
+        IngestionReport report = ingest(ndjson, IngestionFormat.NDJSON);
+        assertEquals(1, report.getAcceptedInvoices());
+        assertEquals(2, report.getRejectedInvoices());
+
+        // An invoice persisted through JPA afterwards gets a distinct id
+        entityManager.persist(Invoice.builder()
+                .creditor(creditor)
+                .debtor(debtor)
+                .valueInCents(100000)
+                .maturityDate(LocalDate.of(2030, 1, 31))
+                .invoiceStatus(InvoiceStatus.PENDING.getDescription())
+                .build());
+        entityManager.flush();
+
+        assertEquals(2, invoiceRepository.findAll().size());
+        assertEquals(2, invoiceRepository.findAll().stream().map(Invoice::getId).distinct().count());
+    }
+
+    private IngestionReport ingest(String content, IngestionFormat format) throws IOException {
+        return ingestionService.ingest(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), format);
+    }
+}
@@ -0,0 +1,214 @@
+package lu.crx.financing.journal;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingResult;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.repositories.CreditorRepository;
+import lu.crx.financing.repositories.DebtorRepository;
+import lu.crx.financing.repositories.FinancingExposureRepository;
+import lu.crx.financing.repositories.FinancingResultRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.repositories.PurchaserRepository;
+import lu.crx.financing.services.FinancingService;
+import lu.crx.financing.support.InvoiceFixtures;
+import lu.crx.financing.support.IsolatedDatabaseTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The journal is applied by its own transactions and its background flusher, so the tests are not transactional and
+ * run on a database of their own.
+ */
+@IsolatedDatabaseTest(properties = {
+        "financing.journal.enabled=true",
+        "financing.journal.directory=target/journal-test"})
+class DecisionJournalTest {
+
+    @Autowired
+    private DecisionJournal decisionJournal;
+
+    @Autowired
+    private JournalApplier journalApplier;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private FinancingProperties financingProperties;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private FinancingResultRepository financingResultRepository;
+
+    @Autowired
+    private FinancingExposureRepository financingExposureRepository;
+
+    @Autowired
+    private CreditorRepository creditorRepository;
+
+    @Autowired
+    private DebtorRepository debtorRepository;
+
+    @Autowired
+    private PurchaserRepository purchaserRepository;
+
+    @Autowired
+    private InvoiceFixtures invoiceFixtures;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testStartupRunIsAppliedThroughTheJournal() {
+        decisionJournal.drain();
+
+        // The seeded invoices are financed as without the journal
+        List<Long> financed = financingResultRepository.findAll().stream()
+                .map(FinancingResult::getInvoiceId)
+                .filter(invoiceId -> invoiceId <= 15)
+                .sorted()
+                .toList();
+        assertEquals(List.of(1L, 2L, 3L, 6L, 7L, 10L, 11L, 12L, 13L, 14L), financed);
+    }
+
+    @Test
+    void testFinancingRunWithTheJournalFinancesEachInvoiceOnce() {
+        List<Long> invoiceIds = List.of(persistPendingInvoice(200000, 30), persistPendingInvoice(800000, 15),
+                persistPendingInvoice(600000, 45));
+
+        financingService.finance();
+        decisionJournal.drain();
+
+        Map<Long, Long> results = financingResultRepository.findAll().stream()
+                .collect(Collectors.groupingBy(FinancingResult::getInvoiceId, Collectors.counting()));
+        for (Invoice invoice : invoiceRepository.findAllById(invoiceIds)) {
+            assertNotEquals(InvoiceStatus.PENDING.getDescription(), invoice.getInvoiceStatus(), "Invoice " + invoice.getId() + " still PENDING");
+            long expected = InvoiceStatus.FINANCED.getDescription().equals(invoice.getInvoiceStatus()) ? 1 : 0;
+            assertEquals(expected, results.getOrDefault(invoice.getId(), 0L));
+        }
+        assertTrue(results.values().stream().allMatch(count -> count == 1));
+    }
+
+    @Test
+    void testApplyingARecordTwiceFinancesTheInvoiceOnce() {
+        long invoiceId = persistPendingInvoice(300000, 30);
+        Purchaser purchaser = purchaserRepository.findAll().get(0);
+        LocalDate financingDate = LocalDate.now().plusYears(1);
+        JournalRecord journalRecord = financedRecord(invoiceId, purchaser.getId(), financingDate);
+
+        assertEquals(1, journalApplier.apply(List.of(journalRecord)).size());
+        long funding = fundingOf(purchaser.getId(), financingDate);
+        assertEquals(journalRecord.getEarlyPaymentAmount(), funding);
+
+        // The second application is skipped, neither the result nor the exposure is counted twice
+        assertEquals(0, journalApplier.apply(List.of(journalRecord)).size());
+        assertEquals(InvoiceStatus.FINANCED.getDescription(), invoiceRepository.findById(invoiceId).orElseThrow().getInvoiceStatus());
+        assertEquals(1, countResults(invoiceId));
+        assertEquals(funding, fundingOf(purchaser.getId(), financingDate));
+    }
+
+    @Test
+    void testFundingIsReservedWithTheAppliedRecordsOnly() {
+        long fundedInvoiceId = persistPendingInvoice(500000, 30);
+        long unfundedInvoiceId = persistPendingInvoice(500000, 31);
+        Purchaser purchaser = purchaserRepository.findAll().get(0);
+        LocalDate financingDate = LocalDate.now().plusYears(2);
+        JournalRecord funded = financedRecord(fundedInvoiceId, purchaser.getId(), financingDate);
+        JournalRecord unfunded = financedRecord(unfundedInvoiceId, purchaser.getId(), financingDate);
+
+        // The limit of the purchaser only covers one of the invoices
+        financingProperties.getAllocation().setCapacityConstrained(true);
+        jdbcTemplate.update("UPDATE purchaser SET daily_funding_limit_in_cents = ? WHERE id = ?", funded.getEarlyPaymentAmount(), purchaser.getId());
+        try {
+            assertEquals(List.of(funded), journalApplier.apply(List.of(funded, unfunded)));
+            assertEquals(InvoiceStatus.FINANCED.getDescription(), invoiceRepository.findById(fundedInvoiceId).orElseThrow().getInvoiceStatus());
+            assertEquals(InvoiceStatus.PENDING.getDescription(), invoiceRepository.findById(unfundedInvoiceId).orElseThrow().getInvoiceStatus());
+            assertEquals(0, countResults(unfundedInvoiceId));
+            assertEquals(funded.getEarlyPaymentAmount(), reservedFundingOf(purchaser.getId(), financingDate));
+
+            // A record of an invoice no longer PENDING is skipped without reserving anything
+            assertEquals(0, journalApplier.apply(List.of(funded)).size());
+            assertEquals(funded.getEarlyPaymentAmount(), reservedFundingOf(purchaser.getId(), financingDate));
+        } finally {
+            jdbcTemplate.update("UPDATE purchaser SET daily_funding_limit_in_cents = NULL WHERE id = ?", purchaser.getId());
+            financingProperties.getAllocation().setCapacityConstrained(false);
+        }
+    }
+
+    @Test
+    void testSealedSegmentLeftByAPreviousRunIsReplayedAtStartup() throws Exception {
+        long invoiceId = persistPendingInvoice(400000, 30);
+        Purchaser purchaser = purchaserRepository.findAll().get(0);
+
+        // The process stops and leaves a sealed segment behind, as a crash before the flush would
+        decisionJournal.stop();
+        Path directory = Paths.get(financingProperties.getJournal().getDirectory());
+        JournalSegment segment = JournalSegment.create(directory, Long.MAX_VALUE / 2, 10);
+        segment.append(financedRecord(invoiceId, purchaser.getId(), LocalDate.now()));
+        segment.force();
+        segment.close();
+
+        decisionJournal.start();
+
+        assertEquals(InvoiceStatus.FINANCED.getDescription(), invoiceRepository.findById(invoiceId).orElseThrow().getInvoiceStatus());
+        assertEquals(1, countResults(invoiceId));
+        try (Stream<Path> segments = Files.list(directory)) {
+            assertEquals(0, segments.filter(path -> path.toString().endsWith(JournalSegment.EXTENSION)).count());
+        }
+    }
+
+    private long persistPendingInvoice(long valueInCents, int termInDays) {
+        return invoiceFixtures.persist(creditorRepository.findAll().get(1), debtorRepository.findAll().get(1), valueInCents,
+                LocalDate.now().plusDays(termInDays), InvoiceStatus.PENDING).getId();
+    }
+
+    private JournalRecord financedRecord(long invoiceId, long purchaserId, LocalDate financingDate) {
+        Invoice invoice = invoiceRepository.findById(invoiceId).orElseThrow();
+        return JournalRecord.builder()
+                .invoiceId(invoiceId)
+                .creditorId(creditorRepository.findAll().get(1).getId())
+                .maturityDate(invoice.getMaturityDate())
+                .statusId(InvoiceStatus.FINANCED.getId())
+                .purchaserId(purchaserId)
+                .financingRate(3)
+                .initialAmount(invoice.getValueInCents())
+                .earlyPaymentAmount(invoice.getValueInCents() - 3)
+                .financingDate(financingDate)
+                .createdAt(LocalDateTime.now())
+                .settingsVersion(1)
+                .build();
+    }
+
+    private long countResults(long invoiceId) {
+        return financingResultRepository.findAll().stream().filter(result -> result.getInvoiceId() == invoiceId).count();
+    }
+
+    private long reservedFundingOf(long purchaserId, LocalDate financingDate) {
+        return jdbcTemplate.queryForObject("SELECT funded_in_cents FROM purchaser_funding WHERE purchaser_id = ? AND financing_date = ?",
+                Long.class, purchaserId, financingDate);
+    }
+
+    private long fundingOf(long purchaserId, LocalDate financingDate) {
+        return financingExposureRepository.sumFundingPerPurchaser(financingDate).stream()
+                .filter(row -> ((Number) row[0]).longValue() == purchaserId)
+                .mapToLong(row -> ((Number) row[1]).longValue())
+                .sum();
+    }
+}
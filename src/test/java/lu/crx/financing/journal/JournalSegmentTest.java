@@ -0,0 +1,83 @@
+package lu.crx.financing.journal;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import lu.crx.financing.enums.InvoiceStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class JournalSegmentTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testRecordsAreRecoveredAfterReopening() {
+        JournalSegment segment = JournalSegment.create(directory, 7, 10);
+        segment.append(journalRecord(1, InvoiceStatus.FINANCED));
+        segment.append(journalRecord(2, InvoiceStatus.NON_FINANCED));
+        segment.force();
+        segment.close();
+
+        JournalSegment reopened = JournalSegment.open(segment.getPath());
+        List<JournalRecord> records = reopened.readAll();
+        reopened.close();
+
+        assertEquals(7, reopened.getSequence());
+        assertEquals(2, records.size());
+        assertEquals(1, records.get(0).getInvoiceId());
+        assertEquals(InvoiceStatus.FINANCED.getId(), records.get(0).getStatusId());
+        assertEquals(199998, records.get(0).getEarlyPaymentAmount());
+        assertEquals(LocalDateTime.of(2024, 5, 27, 10, 15, 30), records.get(0).getCreatedAt());
+        assertEquals(4, records.get(0).getSettingsVersion());
+        assertEquals(2, records.get(1).getInvoiceId());
+    }
+
+    @Test
+    void testTornRecordEndsTheSegment() throws Exception {
+        JournalSegment segment = JournalSegment.create(directory, 1, 10);
+        segment.append(journalRecord(1, InvoiceStatus.FINANCED));
+        segment.append(journalRecord(2, InvoiceStatus.FINANCED));
+        segment.force();
+        segment.close();
+
+        // corrupt the amount of the second record as a partially written record would
+        try (RandomAccessFile file = new RandomAccessFile(segment.getPath().toFile(), "rw")) {
+            file.seek(16 + JournalRecord.SIZE + 40);
+            file.writeLong(-1);
+        }
+
+        JournalSegment reopened = JournalSegment.open(segment.getPath());
+        assertEquals(1, reopened.readAll().size());
+        reopened.close();
+    }
+
+    @Test
+    void testFullSegmentRejectsRecords() {
+        JournalSegment segment = JournalSegment.create(directory, 1, 1);
+        segment.append(journalRecord(1, InvoiceStatus.FINANCED));
+        assertFalse(segment.append(journalRecord(2, InvoiceStatus.FINANCED)));
+        segment.delete();
+    }
+
+    private static JournalRecord journalRecord(long invoiceId, InvoiceStatus status) {
+        return JournalRecord.builder()
+                .invoiceId(invoiceId)
+                .creditorId(3)
+                .maturityDate(LocalDate.of(2024, 7, 1))
+                .statusId(status.getId())
+                .purchaserId(5)
+                .financingRate(2)
+                .initialAmount(200000)
+                .earlyPaymentAmount(199998)
+                .financingDate(LocalDate.of(2024, 5, 27))
+                .createdAt(LocalDateTime.of(2024, 5, 27, 10, 15, 30))
+                .settingsVersion(4)
+                .build();
+    }
+}
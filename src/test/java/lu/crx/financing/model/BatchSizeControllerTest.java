@@ -0,0 +1,59 @@
+package lu.crx.financing.model;
+
+import lu.crx.financing.config.FinancingProperties;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchSizeControllerTest {
+
+    @Test
+    void testBatchSizeConvergesOnTheBestThroughput() {
+        BatchSizeController controller = new BatchSizeController(new FinancingProperties.BatchSizing(), () -> 0.1);
+
+        for (int i = 0; i < 100 && !controller.isConverged(); i++) {
+            recordBatch(controller);
+        }
+
+        // A batch costs 1 millisecond plus 1 microsecond per invoice plus 1 nanosecond per invoice squared, best at 1000
+        assertTrue(controller.isConverged());
+        assertTrue(controller.getBatchSize() > 700 && controller.getBatchSize() < 1400, "Converged on: " + controller.getBatchSize());
+    }
+
+    @Test
+    void testBatchSizeBacksOffUnderHeapPressure() {
+        FinancingProperties.BatchSizing settings = new FinancingProperties.BatchSizing();
+        settings.setInitialSize(400);
+        BatchSizeController controller = new BatchSizeController(settings, () -> 0.9);
+
+        for (int i = 0; i < 100; i++) {
+            recordBatch(controller);
+            assertTrue(controller.getBatchSize() <= 400);
+        }
+
+        assertEquals(settings.getMinSize(), controller.getBatchSize());
+    }
+
+    @Test
+    void testFixedBatchSizeNeverMoves() {
+        FinancingProperties.BatchSizing settings = new FinancingProperties.BatchSizing();
+        settings.setAdaptive(false);
+        settings.setInitialSize(10);
+        BatchSizeController controller = new BatchSizeController(settings, () -> 0.1);
+
+        for (int i = 0; i < 10; i++) {
+            recordBatch(controller);
+        }
+
+        assertEquals(10, controller.getBatchSize());
+        assertEquals(10, controller.getBatches());
+        assertEquals(100, controller.getInvoices());
+        assertFalse(controller.getWriteNanosPerInvoice() == 0);
+    }
+
+    private void recordBatch(BatchSizeController controller) {
+        long size = controller.getBatchSize();
+        controller.record((int) size, 1_000_000, 1000 * size, size * size);
+    }
+}
@@ -0,0 +1,102 @@
+package lu.crx.financing.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lu.crx.financing.enums.InvoiceStatus;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OfferRankingTest {
+
+    @Test
+    void testInvoicesGoToTheCheapestPurchaserWithFundingLeft() {
+        OfferRanking ranking = OfferRanking.of(List.of(candidate(1, 2), candidate(2, 3), candidate(3, 4)));
+        PurchaserBudgets budgets = new PurchaserBudgets();
+        budgets.setBudget(1, 2000 - 4);
+        budgets.setBudget(2, 1500);
+
+        // The cheapest purchaser funds two invoices, the next one funds the third one, the last one has no limit
+        assertEquals(1, ranking.allocate(1000, budgets).getPurchaserId());
+        assertEquals(1, ranking.allocate(1000, budgets).getPurchaserId());
+        assertEquals(2, ranking.allocate(1000, budgets).getPurchaserId());
+        assertEquals(3, ranking.allocate(1000, budgets).getPurchaserId());
+        // A smaller invoice still fits in the budget left to the second purchaser
+        assertEquals(2, ranking.allocate(400, budgets).getPurchaserId());
+        assertEquals(0, budgets.getRemaining(1));
+        assertEquals(1500 - 997 - 397, budgets.getRemaining(2));
+        assertSame(ranking.getCandidates().get(0), ranking.getBest());
+    }
+
+    @Test
+    void testInvoicesStayPendingOnceAllBudgetsAreExhausted() {
+        OfferRanking ranking = OfferRanking.of(List.of(candidate(1, 2)));
+        PurchaserBudgets budgets = new PurchaserBudgets();
+        budgets.setBudget(1, 998);
+
+        // An eligible invoice beyond the funding left waits for a later financing date, it is not NON_FINANCED
+        assertEquals(InvoiceStatus.FINANCED, ranking.allocate(1000, budgets).getStatus());
+        assertEquals(InvoiceStatus.PENDING, ranking.allocate(1000, budgets).getStatus());
+        assertEquals(InvoiceStatus.NON_FINANCED, OfferRanking.of(List.of()).allocate(1000, budgets).getStatus());
+        assertEquals(InvoiceStatus.CANCELED, OfferRanking.of(FinancingDecision.of(InvoiceStatus.CANCELED)).allocate(1000, budgets).getStatus());
+    }
+
+    @Test
+    void testExhaustedPurchaserIsConsideredAgainOnceFundingIsGivenBack() {
+        OfferRanking ranking = OfferRanking.of(List.of(candidate(1, 2), candidate(2, 3)));
+        PurchaserBudgets budgets = new PurchaserBudgets();
+        budgets.setBudget(1, 998);
+
+        assertEquals(1, ranking.allocate(1000, budgets).getPurchaserId());
+        assertEquals(2, ranking.allocate(1000, budgets).getPurchaserId());
+
+        // The invoice funded by the cheapest purchaser was skipped by the writer, its funding is given back
+        budgets.release(1, 998);
+        assertEquals(1, ranking.allocate(1000, budgets).getPurchaserId());
+        assertEquals(2, ranking.allocate(1000, budgets).getPurchaserId());
+
+        // The ranking outlives the run, the budgets of the next run start over from the cheapest purchaser
+        PurchaserBudgets nextBudgets = new PurchaserBudgets();
+        nextBudgets.setBudget(1, 998);
+        assertEquals(1, ranking.allocate(1000, nextBudgets).getPurchaserId());
+    }
+
+    @Test
+    void testConcurrentAllocationsNeverExceedTheLimits() throws Exception {
+        OfferRanking ranking = OfferRanking.of(List.of(candidate(1, 0), candidate(2, 0)));
+        PurchaserBudgets budgets = new PurchaserBudgets();
+        budgets.setBudget(1, 100_000);
+        budgets.setBudget(2, 50_000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicLong[] funded = {new AtomicLong(), new AtomicLong(), new AtomicLong()};
+        List<Future<?>> workers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            workers.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    FinancingDecision decision = ranking.allocate(100, budgets);
+                    funded[decision.getStatus() == InvoiceStatus.FINANCED ? (int) decision.getPurchaserId() : 0].addAndGet(100);
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(100_000, funded[1].get());
+        assertEquals(50_000, funded[2].get());
+        assertEquals(4 * 1000 * 100 - 150_000, funded[0].get());
+    }
+
+    private static FinancingDecision candidate(long purchaserId, int financingRateInBps) {
+        return FinancingDecision.financed(purchaserId, financingRateInBps, 1);
+    }
+}
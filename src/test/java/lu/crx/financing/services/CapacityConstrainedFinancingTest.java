@@ -0,0 +1,125 @@
+package lu.crx.financing.services;
+
+import java.time.LocalDate;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingResult;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.model.PurchaserBudgets;
+import lu.crx.financing.repositories.FinancingResultRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.repositories.PurchaserRepository;
+import lu.crx.financing.support.InvoiceFixtures;
+import lu.crx.financing.support.IsolatedDatabaseTest;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * The tests change the funding limits of the purchasers, a settings change publishing a new offer book, so they run on
+ * a database and an offer book snapshot of their own.
+ */
+@IsolatedDatabaseTest(properties = "financing.allocation.capacity-constrained=true")
+@Transactional
+class CapacityConstrainedFinancingTest {
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private FinancingProperties financingProperties;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private FinancingResultRepository financingResultRepository;
+
+    @Autowired
+    private PurchaserRepository purchaserRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private InvoiceFixtures invoiceFixtures;
+
+    @SpyBean
+    private ExposureService exposureService;
+
+    @Test
+    void testInvoicesBeyondTheFundingLeftStayPending() {
+        long invoiceId = invoiceFixtures.persistPendingCopy(invoiceRepository.findById(1L).orElseThrow()).getId();
+        setDailyFundingLimits(1L);
+
+        // The invoice is eligible but no purchaser has funding left today, it waits for the next financing date
+        financingService.finance();
+        assertEquals(InvoiceStatus.PENDING.getDescription(), invoiceRepository.findById(invoiceId).orElseThrow().getInvoiceStatus());
+        assertEquals(0, countResults(invoiceId));
+
+        // Once funding is available again the next run finances it
+        setDailyFundingLimits(null);
+        financingService.finance();
+        assertEquals(InvoiceStatus.FINANCED.getDescription(), invoiceRepository.findById(invoiceId).orElseThrow().getInvoiceStatus());
+        assertEquals(1, countResults(invoiceId));
+    }
+
+    @Test
+    void testFundingSpentByAnotherRunIsNotSpentTwice() {
+        FinancingResult seededResult = financingResultRepository.findAll().stream().filter(result -> result.getInvoiceId() == 1L).findFirst().orElseThrow();
+        Purchaser purchaser = purchaserRepository.findById(seededResult.getPurchaser().getId()).orElseThrow();
+        long invoiceId = invoiceFixtures.persistPendingCopy(invoiceRepository.findById(1L).orElseThrow()).getId();
+        purchaser.setDailyFundingLimitInCents(100_000_000L);
+        entityManager.flush();
+        LocalDate today = LocalDate.now();
+
+        // Another run reserves the funding left to the purchaser once this run read its budgets
+        doAnswer(invocation -> {
+            PurchaserBudgets budgets = (PurchaserBudgets) invocation.callRealMethod();
+            assertTrue(exposureService.reserveFunding(purchaser.getId(), today, budgets.getRemaining(purchaser.getId())));
+            return budgets;
+        }).when(exposureService).getPurchaserBudgets(any(LocalDate.class));
+        financingService.finance();
+        Mockito.reset(exposureService);
+
+        // The run allocated the invoice out of its budgets, the database refused the funding and the invoice waits
+        assertEquals(InvoiceStatus.PENDING.getDescription(), invoiceRepository.findById(invoiceId).orElseThrow().getInvoiceStatus());
+        assertEquals(0, countResults(invoiceId));
+        assertEquals(0, exposureService.getPurchaserBudgets(today).getRemaining(purchaser.getId()));
+    }
+
+    @Test
+    void testPipelinedRunIsRefused() {
+        // The pipeline deciders would race for the last funding of a purchaser
+        FinancingProperties properties = new FinancingProperties();
+        properties.getAllocation().setCapacityConstrained(true);
+        properties.getPipeline().setEnabled(true);
+        assertThrows(IllegalStateException.class, properties::afterPropertiesSet);
+
+        financingProperties.getPipeline().setEnabled(true);
+        try {
+            assertThrows(IllegalStateException.class, () -> financingService.finance());
+        } finally {
+            financingProperties.getPipeline().setEnabled(false);
+        }
+    }
+
+    private void setDailyFundingLimits(Long dailyFundingLimitInCents) {
+        for (Purchaser purchaser : purchaserRepository.findAll()) {
+            purchaser.setDailyFundingLimitInCents(dailyFundingLimitInCents);
+        }
+        entityManager.flush();
+    }
+
+    private long countResults(long invoiceId) {
+        return financingResultRepository.findAll().stream().filter(result -> result.getInvoiceId() == invoiceId).count();
+    }
+}
@@ -0,0 +1,98 @@
+package lu.crx.financing.services;
+
+import jakarta.transaction.Transactional;
+import java.time.LocalDate;
+import java.util.List;
+import jakarta.persistence.EntityManager;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.model.ExposureSummary;
+import lu.crx.financing.model.PurchaserBudgets;
+import lu.crx.financing.repositories.PurchaserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource("classpath:application-test.properties")
+@Transactional
+class ExposureServiceTest {
+
+    @Autowired
+    private ExposureService exposureService;
+
+    @Autowired
+    private PurchaserRepository purchaserRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void testExposureIsMaintainedByTheFinancing() {
+        LocalDate today = LocalDate.now();
+        List<ExposureSummary> exposure = exposureService.getOutstandingExposure(today, today, today);
+
+        assertEquals(10, exposure.stream().mapToLong(ExposureSummary::getFinancedInvoices).sum());
+        assertEquals(21500000, exposure.stream().mapToLong(ExposureSummary::getFinancedValueInCents).sum());
+        assertEquals(21499983, exposure.stream().mapToLong(ExposureSummary::getEarlyPaymentAmountInCents).sum());
+        assertEquals(0, exposureService.getOutstandingExposure(today.minusDays(2), today.minusDays(1), today).size());
+    }
+
+    @Test
+    void testRebuildMatchesTheMaintainedExposure() {
+        LocalDate today = LocalDate.now();
+        List<ExposureSummary> maintained = exposureService.getOutstandingExposure(today, today, today);
+
+        exposureService.rebuild();
+        List<ExposureSummary> rebuilt = exposureService.getOutstandingExposure(today, today, today);
+
+        assertEquals(maintained.toString(), rebuilt.toString());
+    }
+
+    @Test
+    void testPurchaserBudgetsDeductTheFundingOfTheDay() {
+        LocalDate today = LocalDate.now();
+        List<Purchaser> purchasers = purchaserRepository.findAll();
+        Purchaser limited = purchasers.get(0);
+        limited.setDailyFundingLimitInCents(50_000_000L);
+        entityManager.flush();
+
+        long fundedToday = exposureService.getOutstandingExposure(today, today, today).stream()
+                .filter(exposure -> exposure.getPurchaserId() == limited.getId())
+                .mapToLong(ExposureSummary::getEarlyPaymentAmountInCents)
+                .sum();
+        PurchaserBudgets budgets = exposureService.getPurchaserBudgets(today);
+
+        assertEquals(50_000_000L - fundedToday, budgets.getRemaining(limited.getId()));
+        assertEquals(50_000_000L, exposureService.getPurchaserBudgets(today.plusDays(1)).getRemaining(limited.getId()));
+        assertEquals(Long.MAX_VALUE, budgets.getRemaining(purchasers.get(1).getId()));
+    }
+
+    @Test
+    void testFundingIsReservedWithinTheDailyLimit() {
+        LocalDate today = LocalDate.now();
+        List<Purchaser> purchasers = purchaserRepository.findAll();
+        Purchaser limited = purchasers.get(0);
+        long fundedToday = exposureService.getOutstandingExposure(today, today, today).stream()
+                .filter(exposure -> exposure.getPurchaserId() == limited.getId())
+                .mapToLong(ExposureSummary::getEarlyPaymentAmountInCents)
+                .sum();
+        limited.setDailyFundingLimitInCents(fundedToday + 1000);
+        entityManager.flush();
+
+        // The first reservation of the day starts from the exposure, the next ones from the reserved funding
+        assertTrue(exposureService.reserveFunding(limited.getId(), today, 600));
+        assertFalse(exposureService.reserveFunding(limited.getId(), today, 600));
+        assertTrue(exposureService.reserveFunding(limited.getId(), today, 400));
+        assertFalse(exposureService.reserveFunding(limited.getId(), today, 1));
+        assertEquals(0, exposureService.getPurchaserBudgets(today).getRemaining(limited.getId()));
+
+        assertTrue(exposureService.reserveFunding(limited.getId(), today.plusDays(1), 1000));
+        assertTrue(exposureService.reserveFunding(purchasers.get(1).getId(), today, Long.MAX_VALUE / 2));
+    }
+}
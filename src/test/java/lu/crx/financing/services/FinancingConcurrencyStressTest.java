@@ -0,0 +1,162 @@
+package lu.crx.financing.services;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Debtor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.repositories.CreditorRepository;
+import lu.crx.financing.repositories.DebtorRepository;
+import lu.crx.financing.support.IsolatedDatabaseTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stress harness running concurrent financing workers and invoice inserters against a file based H2 database.
+ * It is skipped by default, run it with {@code mvn test -Dtest=FinancingConcurrencyStressTest -Dfinancing.stress=true}
+ * and size it with the {@code financing.stress.*} system properties.
+ */
+@Slf4j
+@IsolatedDatabaseTest(properties = {"spring.datasource.url=jdbc:h2:file:./target/stress;LOCK_TIMEOUT=2000", "logging.level.lu.crx.financing=WARN"})
+@EnabledIfSystemProperty(named = "financing.stress", matches = "true")
+class FinancingConcurrencyStressTest {
+
+    private static final int FINANCING_WORKERS = Integer.getInteger("financing.stress.financing-workers", 4);
+    private static final int INSERTERS = Integer.getInteger("financing.stress.inserters", 2);
+    private static final int INVOICES_PER_INSERTER = Integer.getInteger("financing.stress.invoices-per-inserter", 5000);
+    private static final int INSERT_BATCH_SIZE = Integer.getInteger("financing.stress.insert-batch-size", 250);
+    private static final int MAX_ATTEMPTS = Integer.getInteger("financing.stress.max-attempts", 50);
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private CreditorRepository creditorRepository;
+
+    @Autowired
+    private DebtorRepository debtorRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final Map<String, LongAdder> aborts = new ConcurrentHashMap<>();
+    private final AtomicLong abortedNanos = new AtomicLong();
+
+    @Test
+    void testConcurrentFinancingFinancesEachInvoiceOnce() throws Exception {
+        List<Creditor> creditors = creditorRepository.findAll();
+        List<Debtor> debtors = debtorRepository.findAll();
+        long pendingBefore = countInvoices(InvoiceStatus.PENDING);
+
+        ExecutorService executor = Executors.newFixedThreadPool(FINANCING_WORKERS + INSERTERS);
+        AtomicBoolean inserting = new AtomicBoolean(true);
+        long start = System.nanoTime();
+
+        List<Future<?>> inserters = new ArrayList<>();
+        for (int i = 0; i < INSERTERS; i++) {
+            inserters.add(executor.submit(() -> insertInvoices(creditors, debtors)));
+        }
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < FINANCING_WORKERS; i++) {
+            workers.add(executor.submit(() -> finance(inserting)));
+        }
+
+        for (Future<?> inserter : inserters) {
+            inserter.get();
+        }
+        inserting.set(false);
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        // a last run picks up the invoices inserted after the final run of every worker started
+        financingService.finance();
+
+        long elapsedNanos = System.nanoTime() - start;
+        long invoices = pendingBefore + (long) INSERTERS * INVOICES_PER_INSERTER;
+        log.warn("Stress run: {} invoices with {} financing workers and {} inserters in {} millis, {} invoices/s",
+                invoices, FINANCING_WORKERS, INSERTERS, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), invoices * 1_000_000_000L / elapsedNanos);
+        log.warn("Stress run: {} financing runs, aborted and retried: {}, {} millis lost in aborted runs",
+                runs.get(), aborts, TimeUnit.NANOSECONDS.toMillis(abortedNanos.get()));
+
+        assertEquals(0, countInvoices(InvoiceStatus.PENDING));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM (SELECT invoice_id FROM financing_result GROUP BY invoice_id HAVING COUNT(*) > 1)", Long.class));
+        assertEquals(countInvoices(InvoiceStatus.FINANCED), jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM financing_result fr JOIN invoice i ON i.id = fr.invoice_id WHERE i.invoice_status = ?",
+                Long.class, InvoiceStatus.FINANCED.getDescription()));
+        assertEquals(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM financing_result", Long.class),
+                jdbcTemplate.queryForObject("SELECT COALESCE(SUM(financed_invoices), 0) FROM financing_exposure", Long.class));
+    }
+
+    private void insertInvoices(List<Creditor> creditors, List<Debtor> debtors) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int inserted = 0; inserted < INVOICES_PER_INSERTER; inserted += INSERT_BATCH_SIZE) {
+            int batchSize = Math.min(INSERT_BATCH_SIZE, INVOICES_PER_INSERTER - inserted);
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int i = 0; i < batchSize; i++) {
+                    entityManager.persist(Invoice.builder()
+                            .creditor(creditors.get(random.nextInt(creditors.size())))
+                            .debtor(debtors.get(random.nextInt(debtors.size())))
+                            .valueInCents(random.nextLong(10_000, 10_000_000))
+                            .maturityDate(LocalDate.now().plusDays(random.nextInt(-5, 90)))
+                            .invoiceStatus(InvoiceStatus.PENDING.getDescription())
+                            .build());
+                }
+            });
+        }
+    }
+
+    private void finance(AtomicBoolean inserting) {
+        do {
+            int attempt = 0;
+            while (true) {
+                long start = System.nanoTime();
+                try {
+                    runs.incrementAndGet();
+                    financingService.finance();
+                    break;
+                } catch (DataAccessException | TransactionException e) {
+                    // lock timeouts and deadlocks abort the whole run, the time of an aborted run is mostly lock waiting
+                    aborts.computeIfAbsent(e.getClass().getSimpleName(), type -> new LongAdder()).increment();
+                    abortedNanos.addAndGet(System.nanoTime() - start);
+                    assertTrue(++attempt < MAX_ATTEMPTS, "Financing run aborted " + attempt + " times: " + e.getMessage());
+                }
+            }
+        } while (inserting.get());
+    }
+
+    private long countInvoices(InvoiceStatus status) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM invoice WHERE invoice_status = ?", Long.class, status.getDescription());
+    }
+}
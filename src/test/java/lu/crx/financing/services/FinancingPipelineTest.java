@@ -0,0 +1,158 @@
+package lu.crx.financing.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingResult;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.model.FinancingRunContext;
+import lu.crx.financing.repositories.FinancingResultRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.support.InvoiceFixtures;
+import lu.crx.financing.support.IsolatedDatabaseTest;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * The writer stage of the pipeline persists the batches in its own threads and transactions, outside the transaction
+ * of the run, so the tests are not transactional and run on a database and an offer book snapshot of their own.
+ */
+@IsolatedDatabaseTest(properties = {
+        "financing.pipeline.enabled=true",
+        "financing.pipeline.batch-size=3",
+        "financing.pipeline.deciders=3",
+        "financing.pipeline.queue-capacity=1"})
+class FinancingPipelineTest {
+
+    /**
+     * The number of copies of the seeded invoices financed per mode.
+     */
+    private static final int COPIES = 4;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private FinancingProperties financingProperties;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private FinancingResultRepository financingResultRepository;
+
+    @Autowired
+    private InvoiceFixtures invoiceFixtures;
+
+    @SpyBean
+    private FinancingDecisionService financingDecisionService;
+
+    @SpyBean
+    private FinancingWriter financingWriter;
+
+    @Test
+    void testPipelineDecidesLikeTheSequentialRun() {
+        List<Long> pipelined = invoiceFixtures.persistPendingCopiesOfSeededInvoices(COPIES);
+        financingService.finance();
+
+        List<Long> sequential = invoiceFixtures.persistPendingCopiesOfSeededInvoices(COPIES);
+        financingProperties.getPipeline().setEnabled(false);
+        try {
+            financingService.finance();
+        } finally {
+            financingProperties.getPipeline().setEnabled(true);
+        }
+
+        Map<Long, Invoice> invoices = invoiceRepository.findAllById(union(pipelined, sequential)).stream()
+                .collect(Collectors.toMap(Invoice::getId, invoice -> invoice));
+        Map<Long, List<FinancingResult>> results = financingResultRepository.findAll().stream()
+                .collect(Collectors.groupingBy(FinancingResult::getInvoiceId));
+        for (int i = 0; i < pipelined.size(); i++) {
+            Invoice pipelinedInvoice = invoices.get(pipelined.get(i));
+            Invoice sequentialInvoice = invoices.get(sequential.get(i));
+            assertEquals(sequentialInvoice.getInvoiceStatus(), pipelinedInvoice.getInvoiceStatus());
+
+            // Every FINANCED invoice has exactly one financing result, the others none
+            List<FinancingResult> pipelinedResults = results.getOrDefault(pipelinedInvoice.getId(), List.of());
+            List<FinancingResult> sequentialResults = results.getOrDefault(sequentialInvoice.getId(), List.of());
+            int expected = InvoiceStatus.FINANCED.getDescription().equals(sequentialInvoice.getInvoiceStatus()) ? 1 : 0;
+            assertEquals(expected, pipelinedResults.size());
+            assertEquals(expected, sequentialResults.size());
+            if (expected == 1) {
+                assertEquals(sequentialResults.get(0).getPurchaser().getId(), pipelinedResults.get(0).getPurchaser().getId());
+                assertEquals(sequentialResults.get(0).getFinancingRate(), pipelinedResults.get(0).getFinancingRate());
+                assertEquals(sequentialResults.get(0).getEarlyPaymentAmount(), pipelinedResults.get(0).getEarlyPaymentAmount());
+            }
+        }
+        assertTrue(pipelined.stream().anyMatch(id -> results.containsKey(id)));
+        assertTrue(results.values().stream().allMatch(invoiceResults -> invoiceResults.size() == 1));
+        assertEquals(0, invoiceRepository.countByInvoiceStatus(InvoiceStatus.PENDING.getDescription()));
+    }
+
+    @Test
+    void testDeciderFailureStopsThePipeline() {
+        invoiceFixtures.persistPendingCopiesOfSeededInvoices(COPIES);
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() == 3) {
+                throw new IllegalStateException("Decider failure");
+            }
+            return invocation.callRealMethod();
+        }).when(financingDecisionService).decide(anyList(), any(FinancingRunContext.class));
+
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () -> financingService.finance());
+        assertEquals("Decider failure", failure.getMessage());
+        assertStagesStopped();
+    }
+
+    @Test
+    void testWriterFailureStopsThePipeline() {
+        invoiceFixtures.persistPendingCopiesOfSeededInvoices(COPIES);
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() == 2) {
+                throw new IllegalStateException("Writer failure");
+            }
+            return invocation.callRealMethod();
+        }).when(financingWriter).write(anyList(), any(FinancingRunContext.class));
+
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () -> financingService.finance());
+        assertEquals("Writer failure", failure.getMessage());
+        assertStagesStopped();
+        // The invoices of the batches after the failure stay PENDING
+        assertTrue(invoiceRepository.countByInvoiceStatus(InvoiceStatus.PENDING.getDescription()) > 0);
+    }
+
+    /**
+     * Method that asserts no stage decides or writes a batch anymore once the run failed
+     */
+    private void assertStagesStopped() {
+        int invocations = Mockito.mockingDetails(financingDecisionService).getInvocations().size()
+                + Mockito.mockingDetails(financingWriter).getInvocations().size();
+        try {
+            Thread.sleep(300);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        assertEquals(invocations, Mockito.mockingDetails(financingDecisionService).getInvocations().size()
+                + Mockito.mockingDetails(financingWriter).getInvocations().size());
+    }
+
+    private static List<Long> union(List<Long> first, List<Long> second) {
+        List<Long> ids = new ArrayList<>(first);
+        ids.addAll(second);
+        return ids;
+    }
+}
@@ -0,0 +1,150 @@
+package lu.crx.financing.services;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.model.FinancingDecision;
+import lu.crx.financing.model.FinancingRunContext;
+import lu.crx.financing.repositories.CreditorRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.support.InvoiceFixtures;
+import lu.crx.financing.support.IsolatedDatabaseTest;
+import lu.crx.financing.support.QueryInspector;
+import lu.crx.financing.support.QueryInspectorConfiguration;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.util.Pair;
+import org.springframework.test.context.jdbc.Sql;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The statement budgets and index usage of the financing stages. The purchasers-per-creditor lookup
+ * (PurchaserRepository.findPurchasersByCreditor) was replaced by the offer book, its budget is the one of the offer
+ * book build: PurchaserRepository.findAllWithSettings reads all the purchasers with their settings in one statement.
+ */
+@IsolatedDatabaseTest
+@Import(QueryInspectorConfiguration.class)
+@Transactional
+class FinancingQueryBudgetTest {
+
+    private static final int INVOICES = 90;
+
+    @Autowired
+    private QueryInspector queryInspector;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private CreditorRepository creditorRepository;
+
+    @Autowired
+    private InvoiceFixtures invoiceFixtures;
+
+    @Autowired
+    private OfferBookService offerBookService;
+
+    @Autowired
+    private SettingsVersionService settingsVersionService;
+
+    @Autowired
+    private FinancingDecisionService financingDecisionService;
+
+    @Autowired
+    private FinancingWriter financingWriter;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Sql(scripts = "classpath:drop_invoices.sql")
+    @Test
+    void testFinancingStagesStayWithinTheirBudgets() {
+        invoiceFixtures.persistPendingInvoices(INVOICES);
+        // The invoices are read from the database, not from the persistence context
+        entityManager.flush();
+        entityManager.clear();
+        FinancingRunContext context = new FinancingRunContext(LocalDateTime.now(), offerBookService.getOfferBook());
+
+        List<Invoice> invoices = queryInspector.measure("fetch", () -> invoiceRepository.findAllByInvoiceStatusAndIdGreaterThanOrderById(
+                        InvoiceStatus.PENDING.getDescription(), 0, Limit.of(INVOICES)))
+                .assertWithinBudget(1, 0, 0)
+                .assertIndexUsed("invoice", "invoice_status_id_idx")
+                .assertIndexUsed("creditor", "primary_key")
+                .assertIndexUsed("debtor", "primary_key")
+                .getResult();
+        assertEquals(INVOICES, invoices.size());
+
+        List<Pair<Invoice, FinancingDecision>> decisions = queryInspector.measure("decide", () -> financingDecisionService.decide(invoices, context))
+                .assertWithinBudget(0, 0, 0)
+                .getResult();
+
+        // Lock, insert the results, one update per status and the exposure merge, the lock of the PENDING invoices by id
+        // may equally look them up through the (status, id) index
+        queryInspector.measure("write", () -> financingWriter.write(decisions, context))
+                .assertWithinBudget(InvoiceStatus.values().length + 3, 0, 0)
+                .assertIndexUsed("invoice", "primary_key", "invoice_status_id_idx")
+                .assertNoTableScan();
+    }
+
+    @Test
+    void testOfferBookIsBuiltWithoutNPlusOneQueries() {
+        Creditor creditor = creditorRepository.findAll().get(0);
+        creditor.setMaxFinancingRateInBps(creditor.getMaxFinancingRateInBps() + 1);
+        entityManager.flush();
+        // The version bump of the change is a write of the change, not of the offer book
+        settingsVersionService.bumpPendingVersion();
+
+        // Settings version, creditors, purchasers with their settings and the duplicate settings check
+        queryInspector.measure("offer book", () -> offerBookService.getOfferBook())
+                .assertWithinBudget(4, 0, 0);
+    }
+
+    @Sql(scripts = "classpath:drop_invoices.sql")
+    @Test
+    void testReevaluationFetchUsesTheCreditorStatusMaturityIndex() {
+        Creditor creditor = creditorRepository.findAll().get(0);
+
+        queryInspector.measure("reevaluation fetch", () -> invoiceRepository.findAllByCreditorIdAndInvoiceStatusAndMaturityDateAfterAndIdGreaterThanOrderById(
+                        creditor.getId(), InvoiceStatus.NON_FINANCED.getDescription(), LocalDate.now(), 0, Limit.of(INVOICES)))
+                .assertWithinBudget(1, 0, 0)
+                .assertIndexUsed("invoice", "invoice_creditor_status_maturity_idx");
+    }
+
+    @Sql(scripts = "classpath:drop_invoices.sql")
+    @Test
+    void testMaturityFirstFetchUsesTheStatusMaturityIndex() {
+        invoiceFixtures.persistPendingInvoices(INVOICES);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Invoice> invoices = queryInspector.measure("maturity-first fetch", () -> invoiceRepository.findAllByInvoiceStatusAfterMaturityDateAndId(
+                        InvoiceStatus.PENDING.getDescription(), LocalDate.now().plusDays(60), 0, Limit.of(INVOICES)))
+                .assertWithinBudget(1, 0, 0)
+                .assertIndexUsed("invoice", "invoice_status_maturity_idx")
+                .getResult();
+        assertEquals(INVOICES - 30, invoices.size());
+    }
+
+    @Sql(scripts = "classpath:drop_invoices.sql")
+    @Test
+    void testFinancingRunStaysWithinItsBudget() {
+        invoiceFixtures.persistPendingInvoices(INVOICES);
+        entityManager.flush();
+        entityManager.clear();
+
+        // Pending count and run record (3), offer book (4), reevaluation queue (1), pre-classification batches (2),
+        // a single batch (1 + 5) and the last fetch
+        queryInspector.measure("finance", () -> financingService.finance())
+                .assertWithinBudget(17, 0, 0);
+    }
+}
@@ -0,0 +1,79 @@
+package lu.crx.financing.services;
+
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import lu.crx.financing.repositories.CreditorRepository;
+import lu.crx.financing.repositories.DebtorRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.support.FinancingRegressionHarness;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+
+/**
+ * The figures depend on the JVM, the build machine and the tests run before in the same JVM, so the guard is opt-in:
+ * the allocation per invoice is checked with {@code -Dfinancing.regression=true}, the latencies with
+ * {@code -Dfinancing.latency=true} on top, on the machine the baseline was measured on.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(locations = "classpath:application-test.properties",
+        properties = {"logging.level.lu.crx.financing=WARN", "logging.level.org.springframework.jdbc=WARN"})
+@Transactional
+@EnabledIfSystemProperty(named = "financing.regression", matches = "true")
+class FinancingRegressionTest {
+
+    private static final int INVOICES = 2000;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private FinancingDecisionService financingDecisionService;
+
+    @Autowired
+    private FinancingWriter financingWriter;
+
+    @Autowired
+    private OfferBookService offerBookService;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private CreditorRepository creditorRepository;
+
+    @Autowired
+    private DebtorRepository debtorRepository;
+
+    @Sql(scripts = "classpath:drop_invoices.sql")
+    @Test
+    void testAllocationWithinBaseline() {
+        FinancingRegressionHarness harness = newHarness();
+
+        long bytesPerInvoice = harness.measureBytesPerInvoice(creditorRepository.findAll(), debtorRepository.findAll(), INVOICES);
+        harness.assertAllocationWithinBaseline(bytesPerInvoice, "financing-baseline.properties");
+    }
+
+    @Sql(scripts = "classpath:drop_invoices.sql")
+    @Test
+    @EnabledIfSystemProperty(named = "financing.latency", matches = "true")
+    void testAllocationAndLatencyWithinBaseline() {
+        FinancingRegressionHarness harness = newHarness();
+
+        FinancingRegressionHarness.Figures figures = harness.measure(creditorRepository.findAll(), debtorRepository.findAll(), INVOICES);
+        harness.assertWithinBaseline(figures, "financing-baseline.properties");
+    }
+
+    private FinancingRegressionHarness newHarness() {
+        return new FinancingRegressionHarness(entityManager, financingService, financingDecisionService, financingWriter,
+                offerBookService, invoiceRepository);
+    }
+}
@@ -0,0 +1,63 @@
+package lu.crx.financing.services;
+
+import java.util.Comparator;
+import java.util.List;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.enums.FinancingRunStatus;
+import lu.crx.financing.repositories.FinancingRunRepository;
+import lu.crx.financing.support.IsolatedDatabaseTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@IsolatedDatabaseTest
+class FinancingRunServiceTest {
+
+    @Autowired
+    private FinancingRunService financingRunService;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private FinancingRunRepository financingRunRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void testRunsAreRecordedInTheLedger() {
+        // The run of the application startup, the first one of the ledger
+        FinancingRun startupRun = financingRunRepository.findAll().stream()
+                .min(Comparator.comparing(FinancingRun::getStartedAt))
+                .orElseThrow();
+        assertEquals(FinancingRunStatus.COMPLETED.getDescription(), startupRun.getRunStatus());
+        assertEquals(15, startupRun.getPendingInvoices());
+        assertEquals(10, startupRun.getFinancedInvoices());
+        assertEquals(0, startupRun.getUnfundedInvoices());
+        assertEquals(15, startupRun.getFinancedInvoices() + startupRun.getNonFinancedInvoices()
+                + startupRun.getCanceledInvoices() + startupRun.getSuspendedInvoices() + startupRun.getUnfundedInvoices());
+        assertTrue(startupRun.getBatches() > 0);
+        assertTrue(startupRun.getBatchSize() > 0);
+        assertTrue(startupRun.getTimeToFirstInvoiceMillis() > 0);
+        assertNotNull(startupRun.getFinishedAt());
+
+        // A run whose transaction rolls back
+        long recordedRuns = financingRunRepository.count();
+        transactionTemplate.executeWithoutResult(status -> {
+            financingService.finance();
+            assertEquals(1, financingRunService.getActiveRuns().size());
+            status.setRollbackOnly();
+        });
+
+        List<FinancingRun> history = financingRunService.getHistory(10);
+        assertEquals(recordedRuns + 1, financingRunRepository.count());
+        assertEquals(FinancingRunStatus.FAILED.getDescription(), history.get(0).getRunStatus());
+        assertEquals("Financing transaction rolled back", history.get(0).getError());
+        assertEquals(0, history.get(0).getPendingInvoices());
+        assertTrue(financingRunService.getActiveRuns().isEmpty());
+    }
+}
@@ -0,0 +1,77 @@
+package lu.crx.financing.services;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.repositories.CreditorRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.support.InvoiceFixtures;
+import lu.crx.financing.support.IsolatedDatabaseTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@IsolatedDatabaseTest(properties = {
+        "financing.scheduling.maturity-first=true",
+        "financing.scheduling.time-budget=1ns"})
+@Transactional
+class FinancingSchedulingTest {
+
+    @Autowired
+    private FinancingRunService financingRunService;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private CreditorRepository creditorRepository;
+
+    @Autowired
+    private InvoiceFixtures invoiceFixtures;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void testRunOutOfTimeDefersThePendingInvoices() {
+        // The startup run spends its budget before the first batch, the pre-classified invoices are settled anyway
+        FinancingRun startupRun = financingRunService.getHistory(1).get(0);
+        List<Invoice> pending = invoiceRepository.findAll().stream()
+                .filter(invoice -> InvoiceStatus.PENDING.getDescription().equals(invoice.getInvoiceStatus()))
+                .toList();
+
+        assertTrue(startupRun.getDeferredInvoices() > 0);
+        assertEquals(pending.size(), startupRun.getDeferredInvoices());
+        assertEquals(0, startupRun.getBatches());
+        assertEquals(pending.stream().map(Invoice::getMaturityDate).min(Comparator.naturalOrder()).orElseThrow(),
+                startupRun.getEarliestDeferredMaturityDate());
+    }
+
+    @Test
+    void testPendingInvoicesAreReadNearestMaturityFirst() {
+        for (int days : new int[]{90, 20, 60, 20, 45, 20}) {
+            invoiceFixtures.persist(creditorRepository.findAll().get(0), 100000, LocalDate.now().plusDays(days), InvoiceStatus.PENDING);
+        }
+        entityManager.flush();
+
+        PendingInvoiceCursor cursor = new PendingInvoiceCursor(invoiceRepository, true, Duration.ZERO, System.nanoTime());
+        List<Invoice> read = new ArrayList<>();
+        for (List<Invoice> batch = cursor.next(2); !batch.isEmpty(); batch = cursor.next(2)) {
+            read.addAll(batch);
+        }
+
+        assertEquals(invoiceRepository.countByInvoiceStatus(InvoiceStatus.PENDING.getDescription()), read.size());
+        Comparator<Invoice> maturityFirst = Comparator.comparing(Invoice::getMaturityDate).thenComparingLong(Invoice::getId);
+        assertEquals(read.stream().sorted(maturityFirst).toList(), read);
+        assertEquals(0, cursor.countRemaining());
+        assertTrue(cursor.findEarliestRemainingMaturityDate().isEmpty());
+    }
+}
@@ -3,11 +3,14 @@ package lu.crx.financing.services;
 import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
 import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
 import lu.crx.financing.enums.InvoiceStatus;
 import lu.crx.financing.repositories.CreditorRepository;
 import lu.crx.financing.repositories.DebtorRepository;
 import lu.crx.financing.repositories.FinancingResultRepository;
 import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.repositories.PurchaserRepository;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
@@ -45,15 +48,18 @@ class FinancingServiceTest {
     @Autowired
     private CreditorRepository creditorRepository;
 
+    @Autowired
+    private PurchaserRepository purchaserRepository;
+
     @Test
     @Order(1)
     void testValidInvoicesProcessed() {
-        assertEquals(11, financingResultRepository.findAll().size());
+        assertEquals(10, financingResultRepository.findAll().size());
         assertEquals(15, invoiceRepository.findAll().size());
 
         assertEquals(1, financingResultRepository.findAll().get(0).getInvoiceId());
-        assertEquals(3, financingResultRepository.findAll().get(1).getInvoiceId());
-        assertEquals(4, financingResultRepository.findAll().get(2).getInvoiceId());
+        assertEquals(2, financingResultRepository.findAll().get(1).getInvoiceId());
+        assertEquals(3, financingResultRepository.findAll().get(2).getInvoiceId());
         assertEquals(6, financingResultRepository.findAll().get(3).getInvoiceId());
         assertEquals(7, financingResultRepository.findAll().get(4).getInvoiceId());
         assertEquals(10, financingResultRepository.findAll().get(5).getInvoiceId());
@@ -61,11 +67,10 @@ class FinancingServiceTest {
         assertEquals(12, financingResultRepository.findAll().get(7).getInvoiceId());
         assertEquals(13, financingResultRepository.findAll().get(8).getInvoiceId());
         assertEquals(14, financingResultRepository.findAll().get(9).getInvoiceId());
-        assertEquals(15, financingResultRepository.findAll().get(10).getInvoiceId());
 
-        assertEquals(199999, financingResultRepository.findAll().get(0).getEarlyPaymentAmount());
-        assertEquals(599999, financingResultRepository.findAll().get(1).getEarlyPaymentAmount());
-        assertEquals(499999, financingResultRepository.findAll().get(2).getEarlyPaymentAmount());
+        assertEquals(199996, financingResultRepository.findAll().get(0).getEarlyPaymentAmount());
+        assertEquals(799998, financingResultRepository.findAll().get(1).getEarlyPaymentAmount());
+        assertEquals(599997, financingResultRepository.findAll().get(2).getEarlyPaymentAmount());
         assertEquals(499999, financingResultRepository.findAll().get(3).getEarlyPaymentAmount());
         assertEquals(799998, financingResultRepository.findAll().get(4).getEarlyPaymentAmount());
         assertEquals(799999, financingResultRepository.findAll().get(5).getEarlyPaymentAmount());
@@ -73,7 +78,6 @@ class FinancingServiceTest {
         assertEquals(4999999, financingResultRepository.findAll().get(7).getEarlyPaymentAmount());
         assertEquals(8999999, financingResultRepository.findAll().get(8).getEarlyPaymentAmount());
         assertEquals(799999, financingResultRepository.findAll().get(9).getEarlyPaymentAmount());
-        assertEquals(8999999, financingResultRepository.findAll().get(10).getEarlyPaymentAmount());
     }
 
     @Sql(scripts = "classpath:drop_invoices.sql")
@@ -107,7 +111,7 @@ class FinancingServiceTest {
                 .creditor(creditorRepository.findAll().get(0))
                 .debtor(debtorRepository.findAll().get(1))
                 .valueInCents(800000)
-                .maturityDate(LocalDate.now().plusDays(33))
+                .maturityDate(LocalDate.now().plusDays(80))
                 .invoiceStatus(InvoiceStatus.PENDING.getDescription())
                 .build());
 
@@ -123,4 +127,36 @@ class FinancingServiceTest {
         assertEquals(InvoiceStatus.NON_FINANCED.getDescription(), invoiceRepository.findAll().get(0).getInvoiceStatus());
         assertEquals(InvoiceStatus.NON_FINANCED.getDescription(), invoiceRepository.findAll().get(1).getInvoiceStatus());
     }
+
+    @Sql(scripts = "classpath:drop_invoices.sql")
+    @Test
+    void testInvoicesWithDuplicateSettingsAreSuspended() {
+        Purchaser purchaser = purchaserRepository.findAll().get(0);
+        PurchaserFinancingSettings duplicate = PurchaserFinancingSettings.builder()
+                .creditor(creditorRepository.findAll().get(0))
+                .annualRateInBps(20)
+                .build();
+        entityManager.persist(duplicate);
+        purchaser.getPurchaserFinancingSettings().add(duplicate);
+
+        entityManager.persist(Invoice.builder()
+                .creditor(creditorRepository.findAll().get(0))
+                .debtor(debtorRepository.findAll().get(0))
+                .valueInCents(200000)
+                .maturityDate(LocalDate.now().plusDays(30))
+                .invoiceStatus(InvoiceStatus.PENDING.getDescription())
+                .build());
+
+        entityManager.persist(Invoice.builder()
+                .creditor(creditorRepository.findAll().get(1))
+                .debtor(debtorRepository.findAll().get(1))
+                .valueInCents(800000)
+                .maturityDate(LocalDate.now().plusDays(15))
+                .invoiceStatus(InvoiceStatus.PENDING.getDescription())
+                .build());
+
+        financingService.finance();
+        assertEquals(InvoiceStatus.SUSPENDED.getDescription(), invoiceRepository.findAll().get(0).getInvoiceStatus());
+        assertEquals(InvoiceStatus.FINANCED.getDescription(), invoiceRepository.findAll().get(1).getInvoiceStatus());
+    }
 }
@@ -0,0 +1,141 @@
+package lu.crx.financing.services;
+
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.FinancingResult;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.model.FinancingDecision;
+import lu.crx.financing.model.FinancingRunContext;
+import lu.crx.financing.offerbook.OfferBook;
+import lu.crx.financing.repositories.CreditorRepository;
+import lu.crx.financing.support.InvoiceFixtures;
+import lu.crx.financing.support.IsolatedDatabaseTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.util.Pair;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The tests change the financing settings, publishing new offer book snapshots, so they run on a database and an offer
+ * book snapshot of their own.
+ */
+@IsolatedDatabaseTest
+@Transactional
+class OfferBookServiceTest {
+
+    @Autowired
+    private OfferBookService offerBookService;
+
+    @Autowired
+    private SettingsVersionService settingsVersionService;
+
+    @Autowired
+    private CreditorRepository creditorRepository;
+
+    @Autowired
+    private InvoiceFixtures invoiceFixtures;
+
+    @Autowired
+    private FinancingDecisionService financingDecisionService;
+
+    @Autowired
+    private FinancingWriter financingWriter;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private FinancingProperties financingProperties;
+
+    @Test
+    void testOfferBookIsMappedFromTheSnapshotFile() {
+        OfferBook offerBook = offerBookService.getOfferBook();
+        assertSame(offerBook, offerBookService.getOfferBook());
+        assertTrue(offerBook.isBuiltFrom(settingsVersionService.getCurrentVersion()));
+
+        OfferBook snapshot = OfferBook.open(Paths.get(financingProperties.getOfferBook().getFile()));
+        assertNotNull(snapshot);
+        assertTrue(snapshot.isBuiltFrom(settingsVersionService.getCurrentVersion()));
+        assertEquals(3, snapshot.getCreditorCount());
+        assertEquals(offerBook.getOfferCount(), snapshot.getOfferCount());
+
+        for (Creditor creditor : creditorRepository.findAll()) {
+            assertEquals(creditor.getMaxFinancingRateInBps(), snapshot.getCreditorSettings(creditor.getId()).getMaxFinancingRateInBps());
+            List<OfferBook.Offer> offers = snapshot.getOffers(creditor.getId());
+            assertEquals(3, offers.size());
+            assertEquals(offers.toString(), offerBook.getOffers(creditor.getId()).toString());
+        }
+    }
+
+    @Test
+    void testOfferBookIsRebuiltWhenSettingsChange() {
+        OfferBook offerBook = offerBookService.getOfferBook();
+        long version = settingsVersionService.getCurrentVersion().getVersion();
+
+        Creditor creditor = creditorRepository.findAll().get(0);
+        creditor.setMaxFinancingRateInBps(42);
+        entityManager.flush();
+
+        // The version is bumped once the change is read, not during the flush
+        assertEquals(version, settingsVersionService.getCurrentVersion().getVersion());
+        OfferBook rebuilt = offerBookService.getOfferBook();
+        assertEquals(version + 1, settingsVersionService.getCurrentVersion().getVersion());
+        assertTrue(rebuilt != offerBook);
+        assertEquals(42, rebuilt.getCreditorSettings(creditor.getId()).getMaxFinancingRateInBps());
+    }
+
+    @Test
+    void testRunningFinancingPicksUpNewSettingsBetweenBatches() {
+        Creditor creditor = creditorRepository.findAll().stream()
+                .filter(c -> c.getMaxFinancingRateInBps() == 5)
+                .findFirst()
+                .orElseThrow();
+        FinancingRunContext context = new FinancingRunContext(LocalDateTime.now(), offerBookService.getOfferBook());
+        long version = settingsVersionService.getCurrentVersion().getVersion();
+
+        List<Pair<Invoice, FinancingDecision>> firstBatch = financingDecisionService.decide(List.of(persistInvoice(creditor)), context);
+        FinancingDecision first = firstBatch.get(0).getSecond();
+        assertEquals(InvoiceStatus.FINANCED, first.getStatus());
+        assertEquals(version, first.getSettingsVersion());
+
+        // A purchaser offering a lower rate joins during the run
+        Purchaser purchaser = Purchaser.builder()
+                .name("LateBank")
+                .minimumFinancingTermInDays(10)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .creditor(creditor)
+                        .annualRateInBps(10)
+                        .build())
+                .build();
+        entityManager.persist(purchaser);
+        long newVersion = offerBookService.getOfferBook().getVersion();
+        assertTrue(newVersion > version);
+
+        List<Pair<Invoice, FinancingDecision>> secondBatch = financingDecisionService.decide(List.of(persistInvoice(creditor)), context);
+        FinancingDecision second = secondBatch.get(0).getSecond();
+        assertEquals(newVersion, second.getSettingsVersion());
+        assertEquals(purchaser.getId(), second.getPurchaserId());
+        assertTrue(first.getPurchaserId() != purchaser.getId());
+
+        financingWriter.write(firstBatch, context);
+        financingWriter.write(secondBatch, context);
+        assertEquals(version, entityManager.find(FinancingResult.class, firstBatch.get(0).getFirst().getId()).getSettingsVersion());
+        assertEquals(newVersion, entityManager.find(FinancingResult.class, secondBatch.get(0).getFirst().getId()).getSettingsVersion());
+    }
+
+    private Invoice persistInvoice(Creditor creditor) {
+        return invoiceFixtures.persist(creditor, 100000, LocalDate.now().plusDays(40), InvoiceStatus.PENDING);
+    }
+}
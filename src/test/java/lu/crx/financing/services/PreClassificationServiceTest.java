@@ -0,0 +1,122 @@
+package lu.crx.financing.services;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import jakarta.persistence.EntityManager;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.enums.FinancingRunStatus;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.model.FinancingRunContext;
+import lu.crx.financing.offerbook.OfferBook;
+import lu.crx.financing.repositories.CreditorRepository;
+import lu.crx.financing.support.InvoiceFixtures;
+import lu.crx.financing.support.IsolatedDatabaseTest;
+import lu.crx.financing.utils.EligibilityCheckUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.util.Pair;
+import org.springframework.test.context.jdbc.Sql;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * The pre-classification commits in its own transaction, before the pending invoices are financed, so the tests are
+ * not transactional and run on a database and an offer book snapshot of their own.
+ */
+@IsolatedDatabaseTest
+class PreClassificationServiceTest {
+
+    @Autowired
+    private PreClassificationService preClassificationService;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private FinancingRunService financingRunService;
+
+    @Autowired
+    private FinancingProperties financingProperties;
+
+    @Autowired
+    private OfferBookService offerBookService;
+
+    @Autowired
+    private EligibilityCheckUtils eligibilityCheckUtils;
+
+    @Autowired
+    private CreditorRepository creditorRepository;
+
+    @Autowired
+    private InvoiceFixtures invoiceFixtures;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Sql(scripts = "classpath:drop_invoices.sql")
+    @Test
+    void testInvoicesOutsideTheFeasibleTermRangeAreSettled() {
+        Creditor creditor = creditorRepository.findAll().get(0);
+        OfferBook offerBook = offerBookService.getOfferBook();
+        Pair<Integer, Integer> range = eligibilityCheckUtils.getFeasibleTermRange(offerBook.getOffers(creditor.getId()),
+                offerBook.getCreditorSettings(creditor.getId()).getMaxFinancingRateInBps());
+
+        Invoice matured = persistInvoice(creditor, 0);
+        Invoice tooShort = persistInvoice(creditor, range.getFirst() - 1);
+        Invoice first = persistInvoice(creditor, range.getFirst());
+        Invoice last = persistInvoice(creditor, range.getSecond());
+        Invoice tooLong = persistInvoice(creditor, range.getSecond() + 1);
+
+        FinancingRunContext context = new FinancingRunContext(LocalDateTime.now(), offerBook);
+        preClassificationService.settle(context);
+
+        assertEquals(InvoiceStatus.CANCELED.getDescription(), statusOf(matured));
+        assertEquals(InvoiceStatus.NON_FINANCED.getDescription(), statusOf(tooShort));
+        assertEquals(InvoiceStatus.PENDING.getDescription(), statusOf(first));
+        assertEquals(InvoiceStatus.PENDING.getDescription(), statusOf(last));
+        assertEquals(InvoiceStatus.NON_FINANCED.getDescription(), statusOf(tooLong));
+        assertEquals(1, context.getProgress().getCanceledInvoices());
+        assertEquals(2, context.getProgress().getNonFinancedInvoices());
+        assertEquals(3, context.getProgress().getProcessedInvoices());
+    }
+
+    @Sql(scripts = "classpath:drop_invoices.sql")
+    @Test
+    void testSettledInvoicesAreNotDecidedAgainByThePipeline() {
+        Creditor creditor = creditorRepository.findAll().get(0);
+        OfferBook offerBook = offerBookService.getOfferBook();
+        Pair<Integer, Integer> range = eligibilityCheckUtils.getFeasibleTermRange(offerBook.getOffers(creditor.getId()),
+                offerBook.getCreditorSettings(creditor.getId()).getMaxFinancingRateInBps());
+
+        Invoice matured = persistInvoice(creditor, 0);
+        Invoice tooShort = persistInvoice(creditor, range.getFirst() - 1);
+        Invoice first = persistInvoice(creditor, range.getFirst());
+
+        // The pipeline stages read and write the pending invoices on connections of their own
+        financingProperties.getPipeline().setEnabled(true);
+        try {
+            financingService.finance();
+        } finally {
+            financingProperties.getPipeline().setEnabled(false);
+        }
+
+        FinancingRun financingRun = financingRunService.getHistory(1).get(0);
+        assertEquals(FinancingRunStatus.COMPLETED.getDescription(), financingRun.getRunStatus());
+        assertEquals(0, financingRun.getSkippedInvoices());
+        assertEquals(1, financingRun.getCanceledInvoices());
+        assertEquals(InvoiceStatus.CANCELED.getDescription(), statusOf(matured));
+        assertEquals(InvoiceStatus.NON_FINANCED.getDescription(), statusOf(tooShort));
+        assertNotEquals(InvoiceStatus.PENDING.getDescription(), statusOf(first));
+    }
+
+    private Invoice persistInvoice(Creditor creditor, int termInDays) {
+        return invoiceFixtures.persist(creditor, 100000, LocalDate.now().plusDays(termInDays), InvoiceStatus.PENDING);
+    }
+
+    private String statusOf(Invoice invoice) {
+        return entityManager.find(Invoice.class, invoice.getId()).getInvoiceStatus();
+    }
+}
@@ -0,0 +1,161 @@
+package lu.crx.financing.services;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+import jakarta.persistence.EntityManager;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.FinancingResult;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+import lu.crx.financing.enums.FinancingRunStatus;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.repositories.CreditorRepository;
+import lu.crx.financing.repositories.FinancingResultRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.support.InvoiceFixtures;
+import lu.crx.financing.support.IsolatedDatabaseTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.support.TransactionTemplate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The reevaluation commits in its own transaction, before the pending invoices are financed, so the tests are not
+ * transactional and run on a database and an offer book snapshot of their own.
+ */
+@IsolatedDatabaseTest
+class ReevaluationServiceTest {
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private FinancingRunService financingRunService;
+
+    @Autowired
+    private FinancingProperties financingProperties;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private FinancingResultRepository financingResultRepository;
+
+    @Autowired
+    private CreditorRepository creditorRepository;
+
+    @Autowired
+    private InvoiceFixtures invoiceFixtures;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Sql(scripts = "classpath:drop_invoices.sql")
+    @Test
+    void testNonFinancedInvoicesAreReevaluatedWhenSettingsChange() {
+        Creditor creditor = creditorRepository.findAll().get(0);
+        Invoice reevaluated = persistNonFinancedInvoice(creditor, LocalDate.now().plusDays(80));
+        Invoice matured = persistNonFinancedInvoice(creditor, LocalDate.now().minusDays(1));
+        Invoice otherCreditor = persistNonFinancedInvoice(creditorRepository.findAll().get(1), LocalDate.now().plusDays(80));
+
+        // Nothing changed, the NON_FINANCED invoices are left alone
+        financingService.finance();
+        assertEquals(0, financingResultRepository.findAll().size());
+
+        // A new purchaser offering a low rate to the creditor
+        persistLowRatePurchaser("LowRateBank", creditor);
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM creditor_reevaluation", Long.class));
+
+        financingService.finance();
+        assertEquals(InvoiceStatus.FINANCED.getDescription(), invoiceRepository.findById(reevaluated.getId()).orElseThrow().getInvoiceStatus());
+        assertEquals(InvoiceStatus.NON_FINANCED.getDescription(), invoiceRepository.findById(matured.getId()).orElseThrow().getInvoiceStatus());
+        assertEquals(InvoiceStatus.NON_FINANCED.getDescription(), invoiceRepository.findById(otherCreditor.getId()).orElseThrow().getInvoiceStatus());
+
+        assertEquals(1, financingResultRepository.findAll().size());
+        assertEquals(reevaluated.getId(), financingResultRepository.findAll().get(0).getInvoiceId());
+        assertEquals(799998, financingResultRepository.findAll().get(0).getEarlyPaymentAmount());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM creditor_reevaluation", Long.class));
+    }
+
+    @Sql(scripts = "classpath:drop_invoices.sql")
+    @Test
+    void testReevaluationDoesNotBlockThePipelineWriters() {
+        Creditor creditor = creditorRepository.findAll().get(2);
+        LocalDate maturityDate = LocalDate.now().plusDays(80);
+        Invoice reevaluated = persistNonFinancedInvoice(creditor, maturityDate);
+        Invoice pending = invoiceFixtures.persistPendingCopy(reevaluated);
+        Purchaser purchaser = persistLowRatePurchaser("PipelineLowRateBank", creditor);
+
+        // The reevaluated and the pending invoice add to the same exposure row of the new purchaser
+        financingProperties.getPipeline().setEnabled(true);
+        try {
+            financingService.finance();
+        } finally {
+            financingProperties.getPipeline().setEnabled(false);
+        }
+
+        assertEquals(FinancingRunStatus.COMPLETED.getDescription(), financingRunService.getHistory(1).get(0).getRunStatus());
+        List<FinancingResult> results = financingResultRepository.findAll();
+        assertEquals(2, results.size());
+        for (Invoice invoice : List.of(reevaluated, pending)) {
+            assertEquals(InvoiceStatus.FINANCED.getDescription(), invoiceRepository.findById(invoice.getId()).orElseThrow().getInvoiceStatus());
+            assertEquals(1, results.stream().filter(result -> result.getInvoiceId() == invoice.getId()).count());
+        }
+        assertTrue(results.stream().allMatch(result -> result.getPurchaser().getId() == purchaser.getId()));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM creditor_reevaluation", Long.class));
+    }
+
+    @Test
+    void testOnlyFinancingChangesQueueTheCreditors() {
+        Creditor loaded = creditorRepository.findAll().get(0);
+        long creditorId = loaded.getId();
+        String name = loaded.getName();
+        int maxFinancingRateInBps = loaded.getMaxFinancingRateInBps();
+
+        // A change the financing decisions do not read queues nothing
+        updateCreditor(creditorId, creditor -> creditor.setName(name + " renamed"));
+        updateCreditor(creditorId, creditor -> creditor.setName(name));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM creditor_reevaluation", Long.class));
+
+        updateCreditor(creditorId, creditor -> creditor.setMaxFinancingRateInBps(maxFinancingRateInBps + 1));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM creditor_reevaluation WHERE creditor_id = ?", Long.class, creditorId));
+
+        updateCreditor(creditorId, creditor -> creditor.setMaxFinancingRateInBps(maxFinancingRateInBps));
+        jdbcTemplate.update("DELETE FROM creditor_reevaluation");
+    }
+
+    private Invoice persistNonFinancedInvoice(Creditor creditor, LocalDate maturityDate) {
+        return invoiceFixtures.persist(creditor, 800000, maturityDate, InvoiceStatus.NON_FINANCED);
+    }
+
+    private Purchaser persistLowRatePurchaser(String name, Creditor creditor) {
+        return transactionTemplate.execute(status -> {
+            Purchaser purchaser = Purchaser.builder()
+                    .name(name)
+                    .minimumFinancingTermInDays(1)
+                    .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                            .creditor(creditor)
+                            .annualRateInBps(10)
+                            .build())
+                    .build();
+            entityManager.persist(purchaser);
+            return purchaser;
+        });
+    }
+
+    private void updateCreditor(long creditorId, Consumer<Creditor> update) {
+        transactionTemplate.executeWithoutResult(status -> update.accept(entityManager.find(Creditor.class, creditorId)));
+    }
+}
@@ -0,0 +1,289 @@
+package lu.crx.financing.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import jakarta.persistence.EntityManager;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Debtor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.model.FinancingDecision;
+import lu.crx.financing.model.FinancingRunContext;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.services.FinancingDecisionService;
+import lu.crx.financing.services.FinancingService;
+import lu.crx.financing.services.FinancingWriter;
+import lu.crx.financing.services.OfferBookService;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.util.Pair;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Regression harness measuring the financing of a fixed generated workload: the bytes allocated per invoice by a
+ * whole {@link FinancingService#finance()} run, the latency of deciding each invoice and the latency of each fetch,
+ * decide and write batch. The figures are compared against a checked-in baseline with relative tolerances. The
+ * allocation varies with the JVM and with the tests run before in the same JVM, the latencies with the machine as
+ * well, so they only mean something when measured the way the baseline was.
+ * <p>
+ * Run with {@code -Dfinancing.baseline.update=true} to write the measured figures to
+ * {@code target/financing-baseline.properties}, to be reviewed and checked in.
+ */
+@Slf4j
+@AllArgsConstructor
+public class FinancingRegressionHarness {
+
+    private static final long SEED = 42;
+
+    /**
+     * The batch size of the sequential financing run.
+     */
+    private static final int BATCH_SIZE = 10;
+
+    private final EntityManager entityManager;
+    private final FinancingService financingService;
+    private final FinancingDecisionService financingDecisionService;
+    private final FinancingWriter financingWriter;
+    private final OfferBookService offerBookService;
+    private final InvoiceRepository invoiceRepository;
+
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class Figures {
+
+        private final long bytesPerInvoice;
+
+        /**
+         * The latencies of deciding a single invoice.
+         */
+        private final long decideP50Nanos;
+
+        private final long decideP99Nanos;
+
+        /**
+         * The latencies of fetching, deciding and writing a whole batch.
+         */
+        private final long batchP50Nanos;
+
+        private final long batchP99Nanos;
+    }
+
+    /**
+     * Method that measures the financing of the given number of invoices, after a warm-up of the same size. The
+     * workload is generated from a fixed seed, every measure uses the same invoices.
+     *
+     * @param creditors The creditors of the invoices
+     * @param debtors   The debtors of the invoices
+     * @param invoices  The number of invoices
+     * @return The measured figures
+     */
+    public Figures measure(List<Creditor> creditors, List<Debtor> debtors, int invoices) {
+        long bytesPerInvoice = measureBytesPerInvoice(creditors, debtors, invoices);
+
+        // Warm the JIT up on the latency code paths
+        generateWorkload(creditors, debtors, invoices);
+        measureLatencies(new Samples(), new Samples());
+
+        generateWorkload(creditors, debtors, invoices);
+        Samples decideLatencies = new Samples();
+        Samples batchLatencies = new Samples();
+        measureLatencies(decideLatencies, batchLatencies);
+        return new Figures(bytesPerInvoice, decideLatencies.percentile(50), decideLatencies.percentile(99),
+                batchLatencies.percentile(50), batchLatencies.percentile(99));
+    }
+
+    /**
+     * Method that measures the bytes allocated per invoice by a whole financing run of the given number of invoices,
+     * after a warm-up run of the same size
+     *
+     * @param creditors The creditors of the invoices
+     * @param debtors   The debtors of the invoices
+     * @param invoices  The number of invoices
+     * @return The bytes allocated per invoice
+     */
+    public long measureBytesPerInvoice(List<Creditor> creditors, List<Debtor> debtors, int invoices) {
+        // Warm the JIT up on the same code paths
+        generateWorkload(creditors, debtors, invoices);
+        financingService.finance();
+
+        // Allocation is measured on the calling thread, the sequential run never leaves it
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        generateWorkload(creditors, debtors, invoices);
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        financingService.finance();
+        return (threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / invoices;
+    }
+
+    /**
+     * Method that compares the given allocation against the given baseline, nothing is compared while the baseline
+     * is being updated
+     *
+     * @param bytesPerInvoice The measured bytes allocated per invoice
+     * @param resource        The classpath resource of the baseline
+     */
+    public void assertAllocationWithinBaseline(long bytesPerInvoice, String resource) {
+        Properties baseline = loadBaseline(resource);
+        log.info("Measured: {} bytes per invoice, baseline: {}", bytesPerInvoice, baseline);
+        if (Boolean.getBoolean("financing.baseline.update")) {
+            return;
+        }
+        List<String> regressions = new ArrayList<>();
+        check(regressions, baseline, "bytes-per-invoice", bytesPerInvoice);
+        if (!regressions.isEmpty()) {
+            fail("Financing regressions: " + String.join(", ", regressions));
+        }
+    }
+
+    /**
+     * Method that compares the given figures against the given baseline, failing on the first figure exceeding the
+     * baseline by more than its tolerance
+     *
+     * @param figures  The measured figures
+     * @param resource The classpath resource of the baseline
+     */
+    public void assertWithinBaseline(Figures figures, String resource) {
+        Properties baseline = loadBaseline(resource);
+        log.info("Measured: {}, baseline: {}", figures, baseline);
+
+        if (Boolean.getBoolean("financing.baseline.update")) {
+            writeBaseline(figures, baseline);
+            return;
+        }
+        List<String> regressions = new ArrayList<>();
+        check(regressions, baseline, "bytes-per-invoice", figures.getBytesPerInvoice());
+        check(regressions, baseline, "decide-latency-p50-nanos", figures.getDecideP50Nanos());
+        check(regressions, baseline, "decide-latency-p99-nanos", figures.getDecideP99Nanos());
+        check(regressions, baseline, "batch-latency-p50-nanos", figures.getBatchP50Nanos());
+        check(regressions, baseline, "batch-latency-p99-nanos", figures.getBatchP99Nanos());
+        if (!regressions.isEmpty()) {
+            fail("Financing regressions: " + String.join(", ", regressions));
+        }
+    }
+
+    private Properties loadBaseline(String resource) {
+        Properties baseline = new Properties();
+        try (InputStream stream = getClass().getClassLoader().getResourceAsStream(resource)) {
+            if (stream == null) {
+                throw new IllegalStateException("Missing baseline: " + resource);
+            }
+            baseline.load(stream);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read baseline: " + resource, e);
+        }
+        return baseline;
+    }
+
+    private void check(List<String> regressions, Properties baseline, String figure, long measured) {
+        long expected = Long.parseLong(baseline.getProperty(figure));
+        double tolerance = Double.parseDouble(baseline.getProperty(figure + ".tolerance"));
+        long limit = (long) (expected * (1 + tolerance));
+        if (measured > limit) {
+            regressions.add(figure + " " + measured + " > " + limit + " (baseline " + expected + ")");
+        }
+    }
+
+    private void writeBaseline(Figures figures, Properties baseline) {
+        baseline.setProperty("bytes-per-invoice", Long.toString(figures.getBytesPerInvoice()));
+        baseline.setProperty("decide-latency-p50-nanos", Long.toString(figures.getDecideP50Nanos()));
+        baseline.setProperty("decide-latency-p99-nanos", Long.toString(figures.getDecideP99Nanos()));
+        baseline.setProperty("batch-latency-p50-nanos", Long.toString(figures.getBatchP50Nanos()));
+        baseline.setProperty("batch-latency-p99-nanos", Long.toString(figures.getBatchP99Nanos()));
+        Path file = Paths.get("target", "financing-baseline.properties");
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            baseline.store(writer, "Financing regression baseline");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write baseline: " + file, e);
+        }
+        log.warn("Baseline written to: {}", file.toAbsolutePath());
+    }
+
+    /**
+     * Method that runs the batches of a sequential financing run, timing the decision of each invoice and each batch
+     *
+     * @param decideLatencies The latencies of deciding each invoice
+     * @param batchLatencies  The latencies of fetching, deciding and writing each batch
+     */
+    private void measureLatencies(Samples decideLatencies, Samples batchLatencies) {
+        FinancingRunContext context = new FinancingRunContext(LocalDateTime.now(), offerBookService.getOfferBook());
+        long lastId = 0;
+        while (true) {
+            long start = System.nanoTime();
+            List<Invoice> invoices = invoiceRepository.findAllByInvoiceStatusAndIdGreaterThanOrderById(
+                    InvoiceStatus.PENDING.getDescription(), lastId, Limit.of(BATCH_SIZE));
+            if (invoices.isEmpty()) {
+                break;
+            }
+            lastId = invoices.get(invoices.size() - 1).getId();
+
+            // Each invoice is decided on its own, the batch is written at once
+            List<Pair<Invoice, FinancingDecision>> decisions = new ArrayList<>(invoices.size());
+            for (Invoice invoice : invoices) {
+                long decideStart = System.nanoTime();
+                decisions.addAll(financingDecisionService.decide(List.of(invoice), context));
+                decideLatencies.add(System.nanoTime() - decideStart);
+            }
+            financingWriter.write(decisions, context);
+            batchLatencies.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Latency samples, sorted once for the percentiles.
+     */
+    private static class Samples {
+
+        private long[] values = new long[1024];
+
+        private int count;
+
+        void add(long value) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[count++] = value;
+        }
+
+        long percentile(int percentile) {
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * percentile / 100.0) - 1)];
+        }
+    }
+
+    /**
+     * Method that persists a fixed PENDING workload: amounts and maturities spread over the first three months
+     */
+    private void generateWorkload(List<Creditor> creditors, List<Debtor> debtors, int invoices) {
+        Random random = new Random(SEED);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < invoices; i++) {
+            entityManager.persist(Invoice.builder()
+                    .creditor(creditors.get(random.nextInt(creditors.size())))
+                    .debtor(debtors.get(random.nextInt(debtors.size())))
+                    .valueInCents(10_000 + random.nextInt(10_000_000))
+                    .maturityDate(today.plusDays(random.nextInt(-5, 90)))
+                    .invoiceStatus(InvoiceStatus.PENDING.getDescription())
+                    .build());
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
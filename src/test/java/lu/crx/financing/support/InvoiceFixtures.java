@@ -0,0 +1,125 @@
+package lu.crx.financing.support;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import jakarta.persistence.EntityManager;
+import lombok.AllArgsConstructor;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Debtor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.enums.InvoiceStatus;
+import lu.crx.financing.repositories.CreditorRepository;
+import lu.crx.financing.repositories.DebtorRepository;
+import org.springframework.boot.test.context.TestComponent;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Test component persisting the invoices of the tests. The invoices join the transaction of a transactional test, the
+ * invoices of the other tests are committed before the method returns.
+ */
+@TestComponent
+@AllArgsConstructor
+public class InvoiceFixtures {
+
+    /**
+     * The number of invoices seeded at startup, they have the lowest ids.
+     */
+    public static final int SEEDED_INVOICES = 15;
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final CreditorRepository creditorRepository;
+    private final DebtorRepository debtorRepository;
+
+    /**
+     * Method that persists an invoice of the given creditor to the first seeded debtor
+     *
+     * @param creditor     The creditor of the invoice
+     * @param valueInCents The value of the invoice
+     * @param maturityDate The maturity date of the invoice
+     * @param status       The status of the invoice
+     * @return The persisted invoice
+     */
+    public Invoice persist(Creditor creditor, long valueInCents, LocalDate maturityDate, InvoiceStatus status) {
+        return persist(creditor, debtorRepository.findAll().get(0), valueInCents, maturityDate, status);
+    }
+
+    /**
+     * Method that persists an invoice
+     *
+     * @param creditor     The creditor of the invoice
+     * @param debtor       The debtor of the invoice
+     * @param valueInCents The value of the invoice
+     * @param maturityDate The maturity date of the invoice
+     * @param status       The status of the invoice
+     * @return The persisted invoice
+     */
+    public Invoice persist(Creditor creditor, Debtor debtor, long valueInCents, LocalDate maturityDate, InvoiceStatus status) {
+        return transactionTemplate.execute(transaction -> {
+            Invoice invoice = Invoice.builder()
+                    .creditor(creditor)
+                    .debtor(debtor)
+                    .valueInCents(valueInCents)
+                    .maturityDate(maturityDate)
+                    .invoiceStatus(status.getDescription())
+                    .build();
+            entityManager.persist(invoice);
+            return invoice;
+        });
+    }
+
+    /**
+     * Method that persists a PENDING copy of the given invoice, financed like the original one would be
+     *
+     * @param invoice The invoice to copy
+     * @return The persisted copy
+     */
+    public Invoice persistPendingCopy(Invoice invoice) {
+        return persist(invoice.getCreditor(), invoice.getDebtor(), invoice.getValueInCents(), invoice.getMaturityDate(), InvoiceStatus.PENDING);
+    }
+
+    /**
+     * Method that persists PENDING copies of the seeded invoices
+     *
+     * @param copies The number of copies of every seeded invoice
+     * @return The ids of the copies, in the order of the seeded invoices
+     */
+    public List<Long> persistPendingCopiesOfSeededInvoices(int copies) {
+        return transactionTemplate.execute(transaction -> {
+            List<Invoice> seeded = entityManager.createQuery("SELECT i FROM Invoice i WHERE i.id <= :seeded", Invoice.class)
+                    .setParameter("seeded", (long) SEEDED_INVOICES)
+                    .getResultList().stream()
+                    .sorted(Comparator.comparingLong(Invoice::getId))
+                    .toList();
+            List<Long> copyIds = new ArrayList<>();
+            for (int copy = 0; copy < copies; copy++) {
+                for (Invoice invoice : seeded) {
+                    copyIds.add(persistPendingCopy(invoice).getId());
+                }
+            }
+            return copyIds;
+        });
+    }
+
+    /**
+     * Method that persists PENDING invoices spread over the seeded creditors and debtors, of distinct values and
+     * maturing one day after the other from 30 days on
+     *
+     * @param count The number of invoices
+     * @return The persisted invoices
+     */
+    public List<Invoice> persistPendingInvoices(int count) {
+        return transactionTemplate.execute(transaction -> {
+            List<Creditor> creditors = creditorRepository.findAll();
+            List<Debtor> debtors = debtorRepository.findAll();
+            List<Invoice> invoices = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                invoices.add(persist(creditors.get(i % creditors.size()), debtors.get(i % debtors.size()), 100000 + i,
+                        LocalDate.now().plusDays(30 + i), InvoiceStatus.PENDING));
+            }
+            return invoices;
+        });
+    }
+}
@@ -0,0 +1,37 @@
+package lu.crx.financing.support;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.annotation.AliasFor;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Test annotation running the test class on a database and an offer book snapshot of its own, for the tests committing
+ * their data or changing the financing settings, which would otherwise leak into the tests sharing the default
+ * context. The random names are resolved when the context starts while the context cache only knows their
+ * placeholders, so the context is closed after the class and the next class starts another one. The
+ * {@link InvoiceFixtures} are available to the test.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(locations = {"classpath:application-test.properties", "classpath:isolated-database.properties"})
+@Import(InvoiceFixtures.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public @interface IsolatedDatabaseTest {
+
+    /**
+     * The properties of the test, taking precedence over the ones of the property files.
+     */
+    @AliasFor(annotation = TestPropertySource.class, attribute = "properties")
+    String[] properties() default {};
+}
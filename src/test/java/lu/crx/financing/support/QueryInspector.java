@@ -0,0 +1,219 @@
+package lu.crx.financing.support;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Query inspector measures the database work of an operation: the SQL statements it issues, captured at the JDBC
+ * level, and the Hibernate statistics (entity loads, entity fetches, collection fetches). The captured statements can
+ * be explained by H2, to assert the index every table is accessed through.
+ * <p>
+ * It is registered by the {@link QueryInspectorConfiguration}.
+ */
+@Slf4j
+public class QueryInspector {
+
+    /**
+     * Matches the table accesses of an H2 plan: the table, its optional alias and the index comment.
+     */
+    private static final Pattern TABLE_ACCESS = Pattern.compile("\"PUBLIC\"\\.\"(\\w+)\"(?:\\s+\"?\\w+\"?)?\\s+/\\* PUBLIC\\.([\\w.]+)");
+
+    private final SqlCaptureDataSource dataSource;
+
+    private final Statistics statistics;
+
+    public QueryInspector(SqlCaptureDataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        this.dataSource = dataSource;
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.statistics.setStatisticsEnabled(true);
+    }
+
+    /**
+     * Method that runs the given operation on the current thread, recording its database work
+     *
+     * @param name      The name of the operation, used in the failure messages
+     * @param operation The operation
+     * @return The database work of the operation
+     */
+    public Operation<Void> measure(String name, Runnable operation) {
+        return measure(name, () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    /**
+     * Method that runs the given operation on the current thread, recording its database work
+     *
+     * @param name      The name of the operation, used in the failure messages
+     * @param operation The operation
+     * @return The database work and the result of the operation
+     */
+    public <T> Operation<T> measure(String name, Supplier<T> operation) {
+        statistics.clear();
+        dataSource.startCapture();
+        List<String> statements;
+        T result;
+        try {
+            result = operation.get();
+        } finally {
+            statements = dataSource.stopCapture();
+        }
+        Operation<T> measured = new Operation<>(name, result, statements, statistics.getEntityLoadCount(),
+                statistics.getEntityFetchCount(), statistics.getCollectionFetchCount());
+        log.info("{}", measured);
+        return measured;
+    }
+
+    /**
+     * Method that asks H2 for the plan of the given statement, its parameters bound to null: H2 chooses the indexes
+     * regardless of the parameter values
+     *
+     * @param sql The statement
+     * @return The plan of the statement
+     */
+    public String explain(String sql) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            int parameters = statement.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameters; i++) {
+                statement.setObject(i, null);
+            }
+            try (ResultSet plan = statement.executeQuery()) {
+                plan.next();
+                return plan.getString(1);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot explain: " + sql, e);
+        }
+    }
+
+    /**
+     * Method that lists the indexes the tables of the given statement are accessed through
+     *
+     * @param sql The statement
+     * @return The index per table, a full scan appears as {@code <TABLE>.tableScan}
+     */
+    public Map<String, String> getTableAccesses(String sql) {
+        Map<String, String> accesses = new LinkedHashMap<>();
+        Matcher matcher = TABLE_ACCESS.matcher(explain(sql));
+        while (matcher.find()) {
+            accesses.put(matcher.group(1), matcher.group(2));
+        }
+        return accesses;
+    }
+
+    /**
+     * The database work of an operation.
+     */
+    @Getter
+    public class Operation<T> {
+
+        private final String name;
+
+        private final T result;
+
+        private final List<String> statements;
+
+        private final long entityLoads;
+
+        private final long entityFetches;
+
+        private final long collectionFetches;
+
+        Operation(String name, T result, List<String> statements, long entityLoads, long entityFetches, long collectionFetches) {
+            this.name = name;
+            this.result = result;
+            this.statements = statements;
+            this.entityLoads = entityLoads;
+            this.entityFetches = entityFetches;
+            this.collectionFetches = collectionFetches;
+        }
+
+        /**
+         * Method that asserts the operation stays within the given budget
+         *
+         * @param maxStatements        The maximum number of statements
+         * @param maxEntityFetches     The maximum number of entities fetched one by one (lazy or N+1 loads)
+         * @param maxCollectionFetches The maximum number of collections fetched one by one
+         * @return This operation
+         */
+        public Operation<T> assertWithinBudget(int maxStatements, int maxEntityFetches, int maxCollectionFetches) {
+            List<String> exceeded = new ArrayList<>();
+            if (statements.size() > maxStatements) {
+                exceeded.add(statements.size() + " statements > " + maxStatements);
+            }
+            if (entityFetches > maxEntityFetches) {
+                exceeded.add(entityFetches + " entity fetches > " + maxEntityFetches);
+            }
+            if (collectionFetches > maxCollectionFetches) {
+                exceeded.add(collectionFetches + " collection fetches > " + maxCollectionFetches);
+            }
+            if (!exceeded.isEmpty()) {
+                fail(name + " exceeds its budget: " + String.join(", ", exceeded) + ", statements: " + statements);
+            }
+            return this;
+        }
+
+        /**
+         * Method that asserts every statement of the operation accessing the given table goes through one of the given
+         * indexes, and that at least one statement accesses it
+         *
+         * @param table         The table
+         * @param indexPrefixes The names of the indexes, or their prefixes for the generated primary key names
+         * @return This operation
+         */
+        public Operation<T> assertIndexUsed(String table, String... indexPrefixes) {
+            String tableName = table.toUpperCase(Locale.ROOT);
+            List<String> indexes = Arrays.stream(indexPrefixes).map(index -> index.toUpperCase(Locale.ROOT)).toList();
+            boolean accessed = false;
+            for (String sql : statements) {
+                String access = getTableAccesses(sql).get(tableName);
+                if (access != null) {
+                    accessed = true;
+                    assertTrue(indexes.stream().anyMatch(access::startsWith), name + " accesses " + tableName + " through " + access
+                            + " instead of " + String.join(" or ", indexes) + ": " + explain(sql));
+                }
+            }
+            assertTrue(accessed, name + " does not access " + tableName + ": " + statements);
+            return this;
+        }
+
+        /**
+         * Method that asserts no statement of the operation scans a whole table
+         *
+         * @return This operation
+         */
+        public Operation<T> assertNoTableScan() {
+            for (String sql : statements) {
+                getTableAccesses(sql).forEach((table, access) -> assertTrue(!access.endsWith(".tableScan"),
+                        name + " scans " + table + ": " + explain(sql)));
+            }
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + statements.size() + " statements, " + entityLoads + " entity loads, " + entityFetches
+                    + " entity fetches, " + collectionFetches + " collection fetches";
+        }
+    }
+}
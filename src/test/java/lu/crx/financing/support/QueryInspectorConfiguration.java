@@ -0,0 +1,31 @@
+package lu.crx.financing.support;
+
+import javax.sql.DataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Test configuration wrapping the data source to capture the SQL statements and providing the {@link QueryInspector},
+ * imported by the tests asserting the database work of the financing.
+ */
+@TestConfiguration
+public class QueryInspectorConfiguration {
+
+    @Bean
+    public static BeanPostProcessor sqlCaptureDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource dataSource && !(bean instanceof SqlCaptureDataSource)
+                        ? new SqlCaptureDataSource(dataSource) : bean;
+            }
+        };
+    }
+
+    @Bean
+    public QueryInspector queryInspector(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        return new QueryInspector((SqlCaptureDataSource) dataSource, entityManagerFactory);
+    }
+}
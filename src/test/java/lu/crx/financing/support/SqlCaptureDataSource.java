@@ -0,0 +1,93 @@
+package lu.crx.financing.support;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Data source recording the SQL statements prepared or executed by the capturing thread, whatever issues them:
+ * Hibernate, Spring Data or a {@link org.springframework.jdbc.core.JdbcTemplate}. A JDBC batch counts as a single
+ * statement.
+ */
+public class SqlCaptureDataSource extends DelegatingDataSource {
+
+    private final ThreadLocal<List<String>> captured = new ThreadLocal<>();
+
+    public SqlCaptureDataSource(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    /**
+     * Method that starts recording the statements of the current thread
+     */
+    public void startCapture() {
+        captured.set(new ArrayList<>());
+    }
+
+    /**
+     * Method that stops recording the statements of the current thread
+     *
+     * @return The recorded statements, in execution order
+     */
+    public List<String> stopCapture() {
+        List<String> statements = captured.get();
+        captured.remove();
+        return statements == null ? List.of() : statements;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return capturing(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return capturing(super.getConnection(username, password));
+    }
+
+    private Connection capturing(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().startsWith("prepare") && args != null && args[0] instanceof String sql) {
+                        record(sql);
+                    }
+                    Object result = invoke(connection, method, args);
+                    // The SQL of a plain statement is only known when it is executed
+                    return result instanceof Statement statement && method.getName().equals("createStatement")
+                            ? capturing(statement) : result;
+                });
+    }
+
+    private Statement capturing(Statement statement) {
+        return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Statement.class},
+                (proxy, method, args) -> {
+                    if ((method.getName().startsWith("execute") || method.getName().equals("addBatch"))
+                            && args != null && args[0] instanceof String sql) {
+                        record(sql);
+                    }
+                    return invoke(statement, method, args);
+                });
+    }
+
+    private void record(String sql) {
+        List<String> statements = captured.get();
+        if (statements != null) {
+            statements.add(sql);
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
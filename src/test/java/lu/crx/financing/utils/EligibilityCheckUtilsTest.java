@@ -0,0 +1,65 @@
+package lu.crx.financing.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.exception.InvoiceException;
+import lu.crx.financing.offerbook.OfferBook;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.util.Pair;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EligibilityCheckUtilsTest {
+
+    private final EligibilityCheckUtils eligibilityCheckUtils = new EligibilityCheckUtils();
+
+    private final Creditor creditor = Creditor.builder().id(1).name("Creditor").build();
+
+    @Test
+    void testFeasibleTermRangeCoversEveryFinancedOrSuspendedTerm() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            int maxFinancingRateInBps = random.nextInt(8);
+            List<OfferBook.Offer> offers = new ArrayList<>();
+            for (int i = random.nextInt(4); i > 0; i--) {
+                offers.add(new OfferBook.Offer(1, i, random.nextInt(40), random.nextInt(120) - 10, random.nextInt(10) == 0));
+            }
+
+            Pair<Integer, Integer> range = eligibilityCheckUtils.getFeasibleTermRange(offers, maxFinancingRateInBps);
+            int first = Integer.MAX_VALUE;
+            int last = Integer.MIN_VALUE;
+            for (int term = 1; term <= 2000; term++) {
+                if (isFinancedOrSuspended(offers, maxFinancingRateInBps, term)) {
+                    first = Math.min(first, term);
+                    last = Math.max(last, term);
+                }
+            }
+
+            // The range is the tightest one around the feasible terms, an open range goes beyond the terms checked
+            if (first > last) {
+                assertNull(range, offers + " max rate " + maxFinancingRateInBps);
+            } else {
+                assertEquals(first, range.getFirst(), offers + " max rate " + maxFinancingRateInBps);
+                assertTrue(range.getSecond() == last || last == 2000 && range.getSecond() >= 2000, offers + " max rate " + maxFinancingRateInBps);
+            }
+        }
+    }
+
+    @Test
+    void testCreditorWithoutOffersHasNoFeasibleTerm() {
+        assertNull(eligibilityCheckUtils.getFeasibleTermRange(List.of(), 5));
+        assertNull(eligibilityCheckUtils.getFeasibleTermRange(List.of(new OfferBook.Offer(1, 1, 10, 50, false)), 0));
+        assertEquals(Pair.of(10, 43), eligibilityCheckUtils.getFeasibleTermRange(List.of(new OfferBook.Offer(1, 1, 10, 50, false)), 5));
+    }
+
+    private boolean isFinancedOrSuspended(List<OfferBook.Offer> offers, int maxFinancingRateInBps, int term) {
+        try {
+            return !eligibilityCheckUtils.getEligibleOffers(offers, creditor, maxFinancingRateInBps, term).isEmpty();
+        } catch (InvoiceException e) {
+            return true;
+        }
+    }
+}
@@ -1,2 +1,3 @@
 TRUNCATE TABLE INVOICE;
-TRUNCATE TABLE FINANCING_RESULT;
\ No newline at end of file
+TRUNCATE TABLE FINANCING_RESULT;
+TRUNCATE TABLE FINANCING_EXPOSURE;
\ No newline at end of file